@@ -0,0 +1,918 @@
+package io.quarkus.qlue;
+
+import static io.quarkus.qlue._private.Messages.log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import io.smallrye.common.constraint.Assert;
+
+/**
+ * A chain of steps.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class Chain {
+    private static final String GRAPH_OUTPUT = System.getProperty("io.quarkus.qlue.graph-output");
+    private static final int PARALLEL_THRESHOLD = Integer.getInteger("io.quarkus.qlue.parallel-threshold", 4096).intValue();
+
+    private final Set<ItemId> initialIds;
+    private final Set<ItemId> finalIds;
+    private final int initialSingleCount;
+    private final int initialMultiCount;
+    private final List<StepInfo> startSteps;
+    private final Map<StepId, StepInfo> stepIndex;
+    private final Set<ItemId> consumed;
+    private final Map<ItemId, Integer> consumerCounts;
+    private final Map<ItemId, Integer> streamProducerCounts;
+    private final Map<ItemId, List<StepInfo>> lazyProducers;
+    private final int endStepCount;
+    private final StepGraph graph;
+    private final int[][] wiredRows;
+    private final boolean reduced;
+    private final int[][] inclusions;
+    private final Map<ItemId, int[]> finalProducers;
+    private final ConcurrentHashMap<Set<ItemId>, Chain> subchains = new ConcurrentHashMap<>();
+    private final WiringIndex wiringIndex;
+    private final ClassLoader classLoader;
+
+    Chain(final ChainBuilder chainBuilder) throws ChainBuildException {
+        this(chainBuilder, wire(chainBuilder));
+    }
+
+    /**
+     * Assemble a chain from the result of the wiring phase, which was either computed from the given chain builder or
+     * read from a {@linkplain ChainSnapshot snapshot} which matches it.
+     *
+     * @param chainBuilder the chain builder (not {@code null})
+     * @param wiring the wiring of the chain builder's steps (not {@code null})
+     */
+    Chain(final ChainBuilder chainBuilder, final Wiring wiring) {
+        // copy information from chainBuilder so it can be safely reused
+        this(chainBuilder.classLoader, wiring.initialIds(), wiring.finalIds(), chainBuilder.reduceDependencies,
+                assemble(chainBuilder, wiring), wiring.index());
+    }
+
+    private Chain(final ClassLoader classLoader, final Set<ItemId> initialIds, final Set<ItemId> finalIds,
+            final boolean reduced, final Assembly assembly, final WiringIndex wiringIndex) {
+        this.classLoader = classLoader;
+        this.wiringIndex = wiringIndex;
+        int initialSingleCount = 0;
+        int initialMultiCount = 0;
+        final int[][] wiredRows = assembly.dependencies();
+        final boolean[] lazySteps = assembly.lazy();
+        final int stepCount = wiredRows.length;
+        final int[][] rows;
+        if (reduced) {
+            // retain the wired dependencies for subchains, which may not include the steps that made them redundant
+            rows = new int[stepCount][];
+            for (int i = 0; i < stepCount; i++) {
+                rows[i] = wiredRows[i].clone();
+            }
+            StepGraph.reduce(rows, lazySteps);
+            this.wiredRows = wiredRows;
+        } else {
+            rows = wiredRows;
+            this.wiredRows = null;
+        }
+        // calculate dependencies and dependents as compressed rows
+        final int[] dependencyStarts = new int[stepCount + 1];
+        final int[] dependentStarts = new int[stepCount + 1];
+        int edgeCount = 0;
+        for (int i = 0; i < stepCount; i++) {
+            dependencyStarts[i] = edgeCount;
+            edgeCount += rows[i].length;
+            if (!lazySteps[i]) {
+                // lazy steps are run on demand, never scheduled
+                for (int dependency : rows[i]) {
+                    dependentStarts[dependency + 1]++;
+                }
+            }
+        }
+        dependencyStarts[stepCount] = edgeCount;
+        final int[] dependencyEdges = new int[edgeCount];
+        for (int i = 0; i < stepCount; i++) {
+            System.arraycopy(rows[i], 0, dependencyEdges, dependencyStarts[i], rows[i].length);
+        }
+        for (int i = 0; i < stepCount; i++) {
+            dependentStarts[i + 1] += dependentStarts[i];
+        }
+        final int[] dependentEdges = new int[dependentStarts[stepCount]];
+        final int[] fill = Arrays.copyOf(dependentStarts, stepCount);
+        for (int i = 0; i < stepCount; i++) {
+            if (!lazySteps[i]) {
+                // dependents are filled in ascending order, so each row is sorted
+                for (int dependency : rows[i]) {
+                    dependentEdges[fill[dependency]++] = i;
+                }
+            }
+        }
+        final StepGraph graph = new StepGraph(dependencyStarts, dependencyEdges, dependentStarts, dependentEdges);
+        // build all
+        final List<StepInfo> startSteps = new ArrayList<>();
+        int endStepCount = 0;
+        final Map<StepId, StepInfo> stepIndex = new HashMap<>();
+        final Set<ItemId> streamed = new HashSet<>();
+        for (int i = 0; i < stepCount; i++) {
+            final StepInfo stepInfo = assembly.steps().create(graph, i, lazySteps[i]);
+            graph.setStep(i, stepInfo);
+            stepIndex.put(stepInfo.id(), stepInfo);
+            streamed.addAll(stepInfo.streamed());
+            if (lazySteps[i]) {
+                // neither a start nor an end step; it only runs when one of its items is demanded
+                continue;
+            }
+            if (graph.dependencyCount(i) == 0) {
+                // it's a start step!
+                startSteps.add(stepInfo);
+            }
+            if (graph.dependentCount(i) == 0) {
+                // it's an end step!
+                endStepCount++;
+            }
+        }
+        // count the consumers of each item, so that intermediate items can be released once they are no longer needed
+        final Map<ItemId, Integer> consumerCounts = new HashMap<>();
+        // count the producers of each streamed item, so that streams can be completed when the last one finishes
+        final Map<ItemId, Integer> streamProducerCounts = new HashMap<>();
+        // index the lazy producers of each item, so that they can be run on demand
+        final Map<ItemId, List<StepInfo>> lazyProducers = new HashMap<>();
+        for (int i = 0; i < stepCount; i++) {
+            final StepInfo stepInfo = graph.step(i);
+            if (stepInfo.isLazy()) {
+                for (ItemId itemId : stepInfo.produces()) {
+                    lazyProducers.computeIfAbsent(itemId, Chain::newArrayList).add(stepInfo);
+                }
+            }
+            for (ItemId itemId : stepInfo.consumes()) {
+                consumerCounts.merge(itemId, Integer.valueOf(1), Integer::sum);
+            }
+            for (ItemId itemId : stepInfo.produces()) {
+                if (streamed.contains(itemId)) {
+                    streamProducerCounts.merge(itemId, Integer.valueOf(1), Integer::sum);
+                }
+            }
+        }
+        for (ItemId itemId : streamed) {
+            streamProducerCounts.putIfAbsent(itemId, Integer.valueOf(0));
+        }
+        //        if (GRAPH_OUTPUT != null && !GRAPH_OUTPUT.isEmpty()) {
+        //            try (FileOutputStream fos = new FileOutputStream(GRAPH_OUTPUT)) {
+        //                try (OutputStreamWriter osw = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
+        //                    try (BufferedWriter writer = new BufferedWriter(osw)) {
+        //                        writer.write("digraph {");
+        //                        writer.newLine();
+        //                        writer.write("    node [shape=rectangle];");
+        //                        writer.newLine();
+        //                        writer.write("    rankdir=LR;");
+        //                        writer.newLine();
+        //                        writer.newLine();
+        //                        writer.write("    { rank = same; ");
+        //                        for (StepInfo startStep : startSteps) {
+        //                            writer.write(quoteString(startStep.id().toString()));
+        //                            writer.write("; ");
+        //                        }
+        //                        writer.write("};");
+        //                        writer.newLine();
+        //                        writer.write("    { rank = same; ");
+        //                        for (StepInfo endStep : endSteps) {
+        //                            if (!startSteps.contains(endStep)) {
+        //                                writer.write(quoteString(endStep.id().toString()));
+        //                                writer.write("; ");
+        //                            }
+        //                        }
+        //                        writer.write("};");
+        //                        writer.newLine();
+        //                        writer.newLine();
+        //                        final HashSet<StepInfo> printed = new HashSet<>();
+        //                        for (StepInfo step : startSteps) {
+        //                            writeStep(writer, printed, step);
+        //                        }
+        //                        writer.write("}");
+        //                        writer.newLine();
+        //                    }
+        //                }
+        //            } catch (IOException ioe) {
+        //                throw new RuntimeException("Failed to write debug graph output", ioe);
+        //            }
+        //        }
+        this.initialIds = initialIds;
+        this.finalIds = finalIds;
+        this.initialSingleCount = initialSingleCount;
+        this.initialMultiCount = initialMultiCount;
+        this.stepIndex = Map.copyOf(stepIndex);
+        this.startSteps = startSteps;
+        this.consumed = new HashSet<>();
+        this.consumerCounts = Map.copyOf(consumerCounts);
+        this.streamProducerCounts = Map.copyOf(streamProducerCounts);
+        this.lazyProducers = Map.copyOf(lazyProducers);
+        this.endStepCount = endStepCount;
+        this.graph = graph;
+        this.reduced = reduced;
+        this.inclusions = assembly.inclusions();
+        this.finalProducers = Map.copyOf(assembly.finalProducers());
+    }
+
+    /**
+     * Gather the information needed to assemble a chain from the wiring of a chain builder.
+     *
+     * @param chainBuilder the chain builder (not {@code null})
+     * @param wiring the wiring of the chain builder's steps (not {@code null})
+     * @return the assembly information (not {@code null})
+     */
+    private static Assembly assemble(final ChainBuilder chainBuilder, final Wiring wiring) {
+        final List<StepBuilder> included = wiring.included();
+        final Map<StepBuilder, Set<StepBuilder>> dependencies = wiring.dependencies();
+        final Set<StepBuilder> lazy = wiring.lazy();
+        // number the included steps
+        final int stepCount = included.size();
+        final Map<StepBuilder, Integer> indexes = new IdentityHashMap<>(stepCount);
+        for (int i = 0; i < stepCount; i++) {
+            indexes.put(included.get(i), Integer.valueOf(i));
+        }
+        final int[][] rows = new int[stepCount][];
+        final boolean[] lazySteps = new boolean[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            final StepBuilder dependent = included.get(i);
+            rows[i] = indexesOf(dependencies.getOrDefault(dependent, Set.of()), indexes);
+            lazySteps[i] = lazy.contains(dependent);
+        }
+        // find the included steps which are pulled in by each item, for subchains
+        final Set<ItemId> nonOverridable = new HashSet<>();
+        final Map<ItemId, List<Produce>> candidates = new HashMap<>();
+        for (StepBuilder builder : chainBuilder.steps) {
+            final boolean isIncluded = indexes.containsKey(builder);
+            for (Produce produce : builder.getProduces().values()) {
+                if (!produce.isOverridable()) {
+                    nonOverridable.add(produce.itemId());
+                }
+                if (isIncluded && !produce.flags().contains(ProduceFlag.WEAK)) {
+                    candidates.computeIfAbsent(produce.itemId(), Chain::newArrayList).add(produce);
+                }
+            }
+        }
+        final Map<ItemId, Set<StepBuilder>> selected = new HashMap<>();
+        for (Map.Entry<ItemId, List<Produce>> entry : candidates.entrySet()) {
+            // overridable producers are only pulled in if there are no others
+            final boolean overridable = !nonOverridable.contains(entry.getKey());
+            final Set<StepBuilder> producers = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Produce produce : entry.getValue()) {
+                if (produce.isOverridable() == overridable) {
+                    producers.add(produce.stepBuilder());
+                }
+            }
+            selected.put(entry.getKey(), producers);
+        }
+        final int[][] inclusions = new int[stepCount][];
+        for (int i = 0; i < stepCount; i++) {
+            final Set<StepBuilder> producers = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (ItemId itemId : included.get(i).getConsumes().keySet()) {
+                producers.addAll(selected.getOrDefault(itemId, Set.of()));
+            }
+            inclusions[i] = indexesOf(producers, indexes);
+        }
+        final Map<ItemId, int[]> finalProducers = new HashMap<>();
+        for (ItemId itemId : wiring.finalIds()) {
+            finalProducers.put(itemId, indexesOf(selected.getOrDefault(itemId, Set.of()), indexes));
+        }
+        return new Assembly(rows, lazySteps, inclusions, finalProducers, (graph, index, isLazy) -> {
+            final StepBuilder builder = included.get(index);
+            // materialize the included steps only
+            if (builder.step() instanceof SwitchableConsumer<StepContext> switchable) {
+                switchable.materialize();
+            }
+            return new StepInfo(builder, graph, index, isLazy);
+        });
+    }
+
+    private static int[] indexesOf(final Set<StepBuilder> builders, final Map<StepBuilder, Integer> indexes) {
+        final int[] result = new int[builders.size()];
+        int i = 0;
+        for (StepBuilder builder : builders) {
+            result[i++] = indexes.get(builder).intValue();
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Wire the steps of the given chain builder: determine which steps are included in the chain, check the
+     * dependencies between them for cycles, and determine which of them are lazy.
+     *
+     * @param chainBuilder the chain builder (not {@code null})
+     * @return the wiring of the chain (not {@code null})
+     * @throws ChainBuildException if the chain cannot be wired
+     */
+    static Wiring wire(final ChainBuilder chainBuilder) throws ChainBuildException {
+        // large chains are indexed and swept in parallel
+        return wire(chainBuilder, chainBuilder.steps.size() >= PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Wire the steps of the given chain builder, either serially or in parallel. The result is the same either way.
+     *
+     * @param chainBuilder the chain builder (not {@code null})
+     * @param parallel {@code true} to index and sweep the steps in parallel
+     * @return the wiring of the chain (not {@code null})
+     * @throws ChainBuildException if the chain cannot be wired
+     */
+    static Wiring wire(final ChainBuilder chainBuilder, final boolean parallel) throws ChainBuildException {
+        final Set<ItemId> initialIds = Set.copyOf(chainBuilder.initialIds);
+        final Set<ItemId> finalIds = Set.copyOf(chainBuilder.finalIds);
+        // compute index of all producers, or update the index of the chain that the builder was derived from
+        final WiringIndex base = chainBuilder.base;
+        final WiringIndex index;
+        if (base != null && base.initialIds().equals(initialIds)) {
+            index = base.derive(chainBuilder);
+        } else {
+            index = WiringIndex.of(chainBuilder, initialIds, parallel);
+        }
+        final Map<StepId, StepBuilder> stepBuilders = index.stepBuilders();
+        final Map<ItemId, Set<Produce>> allProduces = index.allProduces();
+        final Map<ItemId, Set<Produce>> realProducers = index.realProducers();
+
+        // validate the producer configs for each step (or only those of the items that were indexed again)
+        final Set<ItemId> affected = index.affected();
+        final Optional<ItemId> problem = stream(affected == null ? realProducers.keySet() : affected, parallel)
+                .filter(realProducers::containsKey)
+                .filter(itemId -> checkProducers(itemId, realProducers.get(itemId), initialIds) != null)
+                // the order of the index depends on how it was built, so report the same item either way
+                .min(Comparator.comparing(ItemId::toString));
+        if (problem.isPresent()) {
+            throw checkProducers(problem.get(), realProducers.get(problem.get()), initialIds);
+        }
+        final Set<StepBuilder> included = Collections.newSetFromMap(new IdentityHashMap<>());
+        // now begin to wire dependencies
+        final List<StepBuilder> reached = new ArrayList<>();
+        for (ItemId finalId : finalIds) {
+            addOne(allProduces, reached, finalId, new HashSet<>(), stepBuilders);
+        }
+        List<StepBuilder> toAdd = claim(reached, included);
+        // now recursively add producers of consumed items, one level at a time
+        Map<StepBuilder, Set<Produce>> dependencies = new HashMap<>();
+        // streamed consumers include their producers, but do not wait for them
+        Map<StepBuilder, Set<Produce>> streamDependencies = new HashMap<>();
+        final Set<ItemId> streamed = new HashSet<>();
+        while (!toAdd.isEmpty()) {
+            // the consumers of a level are examined independently, but their producers are claimed in order
+            final List<Reach> reaches = stream(toAdd, parallel)
+                    .map(index::reach)
+                    .toList();
+            reached.clear();
+            for (Reach reach : reaches) {
+                if (reach.problem() != null) {
+                    throw reach.problem();
+                }
+                index.reached(reach);
+                if (reach.dependencies() != null) {
+                    dependencies.put(reach.builder(), reach.dependencies());
+                }
+                if (reach.streamDependencies() != null) {
+                    streamDependencies.put(reach.builder(), reach.streamDependencies());
+                }
+                streamed.addAll(reach.streamed());
+                reached.addAll(reach.reached());
+            }
+            toAdd = claim(reached, included);
+        }
+        // detect cycles, including those which pass through a streamed consumer
+        final Map<StepBuilder, Set<Produce>> allDependencies;
+        if (streamDependencies.isEmpty()) {
+            allDependencies = dependencies;
+        } else {
+            allDependencies = new HashMap<>(dependencies);
+            for (Map.Entry<StepBuilder, Set<Produce>> entry : streamDependencies.entrySet()) {
+                allDependencies.merge(entry.getKey(), entry.getValue(), (a, b) -> {
+                    Set<Produce> merged = new HashSet<>(a);
+                    merged.addAll(b);
+                    return merged;
+                });
+            }
+        }
+        // a new cycle must pass through a step which has not been checked with its current dependencies (because it
+        // was added, its dependencies changed, or it was not included before), so only check from those steps
+        final Set<StepBuilder> checked = index.checked();
+        final Set<StepBuilder> toCheck;
+        if (checked == null) {
+            toCheck = included;
+        } else {
+            toCheck = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (StepBuilder builder : included) {
+                if (!checked.contains(builder)) {
+                    toCheck.add(builder);
+                }
+            }
+        }
+        cycleCheck(toCheck, new HashSet<>(), new HashSet<>(), allDependencies, new ArrayDeque<>(), stepBuilders);
+        // find the lazy steps; a lazy step whose items must be produced regardless of demand is run eagerly instead
+        final Set<StepBuilder> lazy = Collections.newSetFromMap(new IdentityHashMap<>());
+        // items which are only ordered against are never demanded, so their producers cannot wait to be demanded
+        final Set<ItemId> ordered = new HashSet<>();
+        for (StepBuilder builder : included) {
+            for (Consume consume : builder.getConsumes().values()) {
+                if (consume.constraint() == Constraint.ORDER_ONLY) {
+                    ordered.add(consume.itemId());
+                }
+            }
+        }
+        for (StepBuilder builder : included) {
+            if (builder.isLazy() && !streamDependencies.containsKey(builder)
+                    && builder.getProduces().values().stream().allMatch(Produce::isReal)
+                    && builder.realProduces().stream()
+                            .noneMatch(id -> finalIds.contains(id) || streamed.contains(id) || ordered.contains(id))) {
+                lazy.add(builder);
+            }
+        }
+        if (!lazy.isEmpty()) {
+            // consumers of lazy items wait for the dependencies of the lazy producer rather than the producer itself
+            final Map<StepBuilder, Set<Produce>> expanded = new HashMap<>();
+            for (StepBuilder builder : dependencies.keySet()) {
+                expandLazy(builder, lazy, dependencies, expanded, stepBuilders);
+            }
+            dependencies = expanded;
+        }
+        // resolve the dependencies of each included step to the included steps which produce them
+        final List<StepBuilder> includedList = new ArrayList<>(included.size());
+        final Map<StepBuilder, Set<StepBuilder>> resolved = new HashMap<>();
+        for (StepBuilder builder : chainBuilder.steps) {
+            if (included.contains(builder)) {
+                includedList.add(builder);
+                final Set<StepBuilder> producers = new HashSet<>();
+                for (Produce produce : dependencies.getOrDefault(builder, Set.of())) {
+                    final StepBuilder producer = stepBuilders.get(produce.stepId());
+                    if (included.contains(producer)) {
+                        producers.add(producer);
+                    }
+                }
+                if (!producers.isEmpty()) {
+                    resolved.put(builder, producers);
+                }
+            }
+        }
+        if (chainBuilder.incremental && index.isRetained()) {
+            index.setTemplate(chainBuilder.copy());
+            return new Wiring(initialIds, finalIds, includedList, resolved, lazy, index);
+        }
+        return new Wiring(initialIds, finalIds, includedList, resolved, lazy, null);
+    }
+
+    private static <E> List<E> newArrayList(Object ignored) {
+        return new ArrayList<>();
+    }
+
+    /**
+     * Create a new execution builder for this chain.
+     *
+     * @return the new execution builder (not {@code null})
+     */
+    public ExecutionBuilder createExecutionBuilder() {
+        return new ExecutionBuilder(this);
+    }
+
+    /**
+     * Analyze the structure of this chain. The analysis is computed from the dependencies of the steps of this chain,
+     * so if its dependencies were {@linkplain ChainBuilder#setReduceDependencies(boolean) reduced}, the fan-in and
+     * fan-out of each step are counted after reduction.
+     *
+     * @return the analysis of this chain (not {@code null})
+     */
+    public ChainAnalysis analyze() {
+        return new ChainAnalysis(graph);
+    }
+
+    /**
+     * Get a new chain builder.
+     *
+     * @return the chain builder (not {@code null})
+     */
+    public static ChainBuilder builder() {
+        return new ChainBuilder();
+    }
+
+    /**
+     * Get a new chain builder which has the same steps, items, and configuration as the builder that this chain was
+     * built from. Steps may be added to or {@linkplain ChainBuilder#removeSteps(java.util.function.Predicate) removed}
+     * from the new builder, and when it is built, only the parts of the wiring which are affected by those changes
+     * are computed again. Only chains which were built by an {@linkplain ChainBuilder#setIncremental(boolean)
+     * incremental} chain builder without a snapshot or cache can be rebuilt in this way.
+     *
+     * @return the new chain builder (not {@code null})
+     * @throws IllegalStateException if this chain was not built incrementally
+     */
+    public ChainBuilder toBuilder() {
+        final WiringIndex wiringIndex = this.wiringIndex;
+        if (wiringIndex == null) {
+            throw log.notIncremental();
+        }
+        return wiringIndex.template().derive(wiringIndex);
+    }
+
+    /**
+     * Get a chain which produces only some of the final items of this chain. Only the steps which are needed to
+     * produce the given items are included in the subchain, which is derived from this chain without wiring its steps
+     * again. Subchains are cached, so getting a subchain for the same set of items again returns the same chain.
+     *
+     * @param finalIds the final items of the subchain, each of which must be a final item of this chain (must not be
+     *        {@code null})
+     * @return the subchain (not {@code null})
+     * @throws IllegalArgumentException if one of the items is not a final item of this chain
+     */
+    public Chain subchain(Set<ItemId> finalIds) {
+        Assert.checkNotNullParam("finalIds", finalIds);
+        final Set<ItemId> key = Set.copyOf(finalIds);
+        for (ItemId itemId : key) {
+            if (!this.finalIds.contains(itemId)) {
+                throw log.notFinalItem(itemId);
+            }
+        }
+        if (key.equals(this.finalIds)) {
+            return this;
+        }
+        Chain subchain = subchains.get(key);
+        if (subchain == null) {
+            subchain = subchains.computeIfAbsent(key, this::prune);
+        }
+        return subchain;
+    }
+
+    private Chain prune(final Set<ItemId> finalIds) {
+        final int stepCount = graph.stepCount();
+        // find the steps which are needed for the final items
+        final int[] newIndexes = new int[stepCount];
+        Arrays.fill(newIndexes, -1);
+        final ArrayDeque<Integer> toAdd = new ArrayDeque<>();
+        for (ItemId itemId : finalIds) {
+            for (int producer : finalProducers.get(itemId)) {
+                if (newIndexes[producer] == -1) {
+                    newIndexes[producer] = 0;
+                    toAdd.addLast(Integer.valueOf(producer));
+                }
+            }
+        }
+        Integer next;
+        while ((next = toAdd.pollFirst()) != null) {
+            for (int producer : inclusions[next.intValue()]) {
+                if (newIndexes[producer] == -1) {
+                    newIndexes[producer] = 0;
+                    toAdd.addLast(Integer.valueOf(producer));
+                }
+            }
+        }
+        // renumber them, keeping their order
+        int newCount = 0;
+        for (int i = 0; i < stepCount; i++) {
+            if (newIndexes[i] != -1) {
+                newIndexes[i] = newCount++;
+            }
+        }
+        final StepInfo[] kept = new StepInfo[newCount];
+        final int[][] rows = new int[newCount][];
+        final boolean[] lazySteps = new boolean[newCount];
+        final int[][] newInclusions = new int[newCount][];
+        for (int i = 0; i < stepCount; i++) {
+            final int newIndex = newIndexes[i];
+            if (newIndex != -1) {
+                kept[newIndex] = graph.step(i);
+                // dependencies on steps which are not included (such as weak producers) are dropped
+                rows[newIndex] = renumber(wiredRows == null ? graph.dependencyRow(i) : wiredRows[i], newIndexes);
+                lazySteps[newIndex] = kept[newIndex].isLazy();
+                newInclusions[newIndex] = renumber(inclusions[i], newIndexes);
+            }
+        }
+        final Map<ItemId, int[]> newFinalProducers = new HashMap<>();
+        for (ItemId itemId : finalIds) {
+            newFinalProducers.put(itemId, renumber(finalProducers.get(itemId), newIndexes));
+        }
+        return new Chain(classLoader, initialIds, finalIds, reduced,
+                new Assembly(rows, lazySteps, newInclusions, newFinalProducers,
+                        (graph, index, isLazy) -> new StepInfo(kept[index], graph, index, isLazy)),
+                null);
+    }
+
+    private static int[] renumber(final int[] indexes, final int[] newIndexes) {
+        int count = 0;
+        for (int index : indexes) {
+            if (newIndexes[index] != -1) {
+                count++;
+            }
+        }
+        final int[] result = new int[count];
+        count = 0;
+        for (int index : indexes) {
+            final int newIndex = newIndexes[index];
+            if (newIndex != -1) {
+                // the new numbering keeps the old order, so the result is sorted
+                result[count++] = newIndex;
+            }
+        }
+        return result;
+    }
+
+    boolean hasInitial(final ItemId itemId) {
+        return initialIds.contains(itemId);
+    }
+
+    boolean hasFinal(final ItemId itemId) {
+        return finalIds.contains(itemId);
+    }
+
+    int getInitialSingleCount() {
+        return initialSingleCount;
+    }
+
+    int getInitialMultiCount() {
+        return initialMultiCount;
+    }
+
+    List<StepInfo> getStartSteps() {
+        return startSteps;
+    }
+
+    Set<ItemId> getConsumed() {
+        return consumed;
+    }
+
+    Map<ItemId, Integer> getConsumerCounts() {
+        return consumerCounts;
+    }
+
+    Map<ItemId, Integer> getStreamProducerCounts() {
+        return streamProducerCounts;
+    }
+
+    List<StepInfo> getLazyProducers(ItemId itemId) {
+        return lazyProducers.getOrDefault(itemId, List.of());
+    }
+
+    boolean hasLazyProducers() {
+        return !lazyProducers.isEmpty();
+    }
+
+    ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    StepInfo stepInfo(StepId stepId) {
+        return stepIndex.get(stepId);
+    }
+
+    int stepCount() {
+        return graph.stepCount();
+    }
+
+    int getEndStepCount() {
+        return endStepCount;
+    }
+
+    //    private static void writeStep(final BufferedWriter writer, final HashSet<StepInfo> printed, final StepInfo step)
+    //            throws IOException {
+    //        if (printed.add(step)) {
+    //            final String currentStepName = quoteString(step.step().toString());
+    //            final Set<StepId> dependents = step.dependents();
+    //            if (!dependents.isEmpty()) {
+    //                for (StepId id : dependents) {
+    //                    final String dependentName = quoteString(id.toString());
+    //                    writer.write("    ");
+    //                    writer.write(dependentName);
+    //                    writer.write(" -> ");
+    //                    writer.write(currentStepName);
+    //                    writer.newLine();
+    //                }
+    //                writer.newLine();
+    //                for (StepId id : dependents) {
+    //                    writeStep(writer, printed, stepInfo(id).toString());
+    //                }
+    //            }
+    //        }
+    //    }
+
+    private static final Pattern QUOTE_PATTERN = Pattern.compile("[\"]");
+
+    private static String quoteString(String input) {
+        final Matcher matcher = QUOTE_PATTERN.matcher(input);
+        final StringBuffer buf = new StringBuffer();
+        buf.append('"');
+        while (matcher.find()) {
+            matcher.appendReplacement(buf, "\\" + matcher.group(0));
+        }
+        matcher.appendTail(buf);
+        buf.append('"');
+        return buf.toString();
+    }
+
+    private static void cycleCheck(Set<StepBuilder> builders, Set<StepBuilder> visited, Set<StepBuilder> checked,
+            final Map<StepBuilder, Set<Produce>> dependencies, final Deque<Produce> producedPath,
+            final Map<StepId, StepBuilder> stepBuilders)
+            throws ChainBuildException {
+        for (StepBuilder builder : builders) {
+            cycleCheck(builder, visited, checked, dependencies, producedPath, stepBuilders);
+        }
+    }
+
+    private static void cycleCheckProduce(Set<Produce> produceSet, Set<StepBuilder> visited, Set<StepBuilder> checked,
+            final Map<StepBuilder, Set<Produce>> dependencies, final Deque<Produce> producedPath,
+            final Map<StepId, StepBuilder> stepBuilders)
+            throws ChainBuildException {
+        for (Produce produce : produceSet) {
+            producedPath.add(produce);
+            cycleCheck(stepBuilders.get(produce.stepId()), visited, checked, dependencies, producedPath, stepBuilders);
+            producedPath.removeLast();
+        }
+    }
+
+    private static void cycleCheck(StepBuilder builder, Set<StepBuilder> visited, Set<StepBuilder> checked,
+            final Map<StepBuilder, Set<Produce>> dependencies, final Deque<Produce> producedPath,
+            final Map<StepId, StepBuilder> stepBuilders)
+            throws ChainBuildException {
+        if (!checked.contains(builder)) {
+            if (!visited.add(builder)) {
+                final StringBuilder b = new StringBuilder("Cycle detected:\n\t\t   ");
+                final Iterator<Produce> itr = producedPath.descendingIterator();
+                if (itr.hasNext()) {
+                    Produce produce = itr.next();
+                    for (;;) {
+                        b.append(produce.stepId());
+                        ItemId itemId = produce.itemId();
+                        b.append(" produced ").append(itemId);
+                        b.append("\n\t\tto ");
+                        if (!itr.hasNext())
+                            break;
+                        produce = itr.next();
+                        if (produce.stepId() == builder.id())
+                            break;
+                    }
+                    b.append(builder.step());
+                }
+                throw new ChainBuildException(b.toString());
+            }
+            try {
+                final Set<Produce> dependencySet = dependencies.getOrDefault(builder, Collections.emptySet());
+                cycleCheckProduce(dependencySet, visited, checked, dependencies, producedPath, stepBuilders);
+            } finally {
+                visited.remove(builder);
+            }
+        }
+        checked.add(builder);
+    }
+
+    private static Set<Produce> expandLazy(StepBuilder builder, Set<StepBuilder> lazy,
+            Map<StepBuilder, Set<Produce>> dependencies, Map<StepBuilder, Set<Produce>> expanded,
+            Map<StepId, StepBuilder> stepBuilders) {
+        Set<Produce> result = expanded.get(builder);
+        if (result == null) {
+            result = new HashSet<>();
+            for (Produce produce : dependencies.getOrDefault(builder, Set.of())) {
+                final StepBuilder producer = stepBuilders.get(produce.stepId());
+                if (lazy.contains(producer)) {
+                    // cannot recurse infinitely because the graph has no cycles
+                    result.addAll(expandLazy(producer, lazy, dependencies, expanded, stepBuilders));
+                } else {
+                    result.add(produce);
+                }
+            }
+            expanded.put(builder, result);
+        }
+        return result;
+    }
+
+    static ChainBuildException checkProducers(final ItemId itemId, final Set<Produce> producers,
+            final Set<ItemId> initialIds) {
+        if (!itemId.isMulti()) {
+            // make sure there's just one
+            if (producers.size() > 1) {
+                // special case: one overridable, one not
+                if (producers.stream().filter(Produce::isOverridable).count() != 1 ||
+                        producers.stream().filter(p -> !p.isOverridable()).count() != 1) {
+                    return log.multipleProducers(itemId, producers.stream().map(Produce::stepId).toList());
+                }
+            }
+            // make sure it's not an initial item
+            if (initialIds.contains(itemId)) {
+                return log.cannotProduceInitialResource(itemId, producers.stream().map(Produce::stepId).toList());
+            }
+        }
+        return null;
+    }
+
+    static Reach reach(final StepBuilder builder, final Map<ItemId, Set<Produce>> allProduces,
+            final Set<ItemId> initialIds, final Map<StepId, StepBuilder> stepBuilders) {
+        Set<Produce> dependencies = null;
+        Set<Produce> streamDependencies = null;
+        final List<ItemId> streamed = new ArrayList<>();
+        final List<StepBuilder> reached = new ArrayList<>();
+        for (Map.Entry<ItemId, Consume> entry : builder.getConsumes().entrySet()) {
+            final Consume consume = entry.getValue();
+            final ItemId id = entry.getKey();
+            if (!consume.flags().contains(ConsumeFlag.OPTIONAL) && !id.isMulti()) {
+                if (!initialIds.contains(id) && !allProduces.containsKey(id)) {
+                    return new Reach(builder, null, null, List.of(), List.of(), log.noProducers(id));
+                }
+            }
+            final Set<Produce> dependencySet;
+            if (consume.isStreamed()) {
+                streamed.add(id);
+                if (streamDependencies == null) {
+                    streamDependencies = new HashSet<>();
+                }
+                dependencySet = streamDependencies;
+            } else {
+                if (dependencies == null) {
+                    dependencies = new HashSet<>();
+                }
+                dependencySet = dependencies;
+            }
+            // add every producer
+            addOne(allProduces, reached, id, dependencySet, stepBuilders);
+        }
+        return new Reach(builder, dependencies, streamDependencies, streamed, reached, null);
+    }
+
+    private static List<StepBuilder> claim(final List<StepBuilder> reached, final Set<StepBuilder> included) {
+        final List<StepBuilder> claimed = new ArrayList<>();
+        for (StepBuilder builder : reached) {
+            if (included.add(builder)) {
+                claimed.add(builder);
+            }
+        }
+        return claimed;
+    }
+
+    static <E> Stream<E> stream(Collection<E> collection, boolean parallel) {
+        return parallel ? collection.parallelStream() : collection.stream();
+    }
+
+    private static void addOne(final Map<ItemId, Set<Produce>> allProduces, final List<StepBuilder> reached,
+            final ItemId idToAdd, final Set<Produce> dependencies, final Map<StepId, StepBuilder> stepBuilderIndex) {
+        boolean modified = false;
+        for (Produce produce : allProduces.getOrDefault(idToAdd, Set.of())) {
+            // if overridable, add in second pass only if this pass didn't add any producers
+            if (!produce.flags().contains(ProduceFlag.OVERRIDABLE)) {
+                if (!produce.flags().contains(ProduceFlag.WEAK)) {
+                    reached.add(stepBuilderIndex.get(produce.stepId()));
+                }
+                dependencies.add(produce);
+                modified = true;
+            }
+        }
+        if (modified) {
+            // someone has produced this item non-overridably
+            return;
+        }
+        for (Produce produce : allProduces.getOrDefault(idToAdd, Set.of())) {
+            // if overridable, add in this pass only if the first pass didn't add any producers
+            if (produce.flags().contains(ProduceFlag.OVERRIDABLE)) {
+                if (!produce.flags().contains(ProduceFlag.WEAK)) {
+                    reached.add(stepBuilderIndex.get(produce.stepId()));
+                }
+                dependencies.add(produce);
+            }
+        }
+    }
+
+    /**
+     * The consumed items of one step which was reached while wiring a chain. The dependency sets are {@code null} if the
+     * step consumes no items of that kind, and the reached steps are those which must be included to produce them.
+     */
+    record Reach(StepBuilder builder, Set<Produce> dependencies, Set<Produce> streamDependencies,
+            List<ItemId> streamed, List<StepBuilder> reached, ChainBuildException problem) {
+    }
+
+    /**
+     * The result of the wiring phase of a chain. The included steps are given in the order that they were added to the
+     * chain builder, and the dependencies of each step only contain included steps. The index is only given if it is
+     * retained for incremental rebuilds.
+     */
+    record Wiring(Set<ItemId> initialIds, Set<ItemId> finalIds, List<StepBuilder> included,
+            Map<StepBuilder, Set<StepBuilder>> dependencies, Set<StepBuilder> lazy, WiringIndex index) {
+    }
+
+    /**
+     * The numbered steps of a chain which is being assembled. Each step's dependencies are given as the sorted indexes
+     * of the steps it waits for, and its inclusions as the sorted indexes of the steps which produce the items it
+     * consumes and are therefore included in any chain which includes it.
+     */
+    private record Assembly(int[][] dependencies, boolean[] lazy, int[][] inclusions, Map<ItemId, int[]> finalProducers,
+            StepFactory steps) {
+    }
+
+    private interface StepFactory {
+        StepInfo create(StepGraph graph, int index, boolean lazy);
+    }
+}
@@ -0,0 +1,196 @@
+package io.quarkus.qlue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import io.smallrye.common.constraint.Assert;
+
+/**
+ * A structural analysis of the steps of a {@link Chain}, which can be used to size executors and to find steps which
+ * limit parallelism, without running the chain. Only the steps which are scheduled are analyzed; lazy steps, which
+ * are run on demand by the steps which consume their items, are only counted.
+ */
+public final class ChainAnalysis {
+    private final StepGraph graph;
+    private final int stepCount;
+    private final int scheduledStepCount;
+    private final int depth;
+    private final int widestLevel;
+    private final int maxFanIn;
+    private final int maxFanOut;
+    private final List<StepId> serializingSteps;
+
+    ChainAnalysis(final StepGraph graph) {
+        this.graph = graph;
+        final int stepCount = graph.stepCount();
+        final int[] order = graph.order();
+        final int scheduled = order.length;
+        final int[] positions = new int[stepCount];
+        for (int i = 0; i < scheduled; i++) {
+            positions[order[i]] = i;
+        }
+        // the depth of each step is the number of steps on the longest path which ends with it
+        final int[] depths = new int[stepCount];
+        final int[] levelSizes = new int[scheduled + 1];
+        int depth = 0;
+        int maxFanIn = 0;
+        int maxFanOut = 0;
+        for (int step : order) {
+            int stepDepth = 1;
+            for (int i = 0; i < graph.dependencyCount(step); i++) {
+                stepDepth = Math.max(stepDepth, depths[graph.dependency(step, i)] + 1);
+            }
+            depths[step] = stepDepth;
+            levelSizes[stepDepth]++;
+            depth = Math.max(depth, stepDepth);
+            maxFanIn = Math.max(maxFanIn, graph.dependencyCount(step));
+            maxFanOut = Math.max(maxFanOut, graph.dependentCount(step));
+        }
+        // the steps of a level cannot depend on each other, so they may all run at once
+        int widestLevel = 0;
+        for (int levelSize : levelSizes) {
+            widestLevel = Math.max(widestLevel, levelSize);
+        }
+        // a step serializes the chain if every step before it (in order) is an ancestor, and every step after it is
+        // a descendant; the earlier steps are ancestors if each of them has a dependent no later than the step
+        final int[] reachesBy = new int[scheduled];
+        int latest = -1;
+        for (int i = 0; i < scheduled; i++) {
+            reachesBy[i] = latest;
+            int earliestDependent = Integer.MAX_VALUE;
+            for (int j = 0; j < graph.dependentCount(order[i]); j++) {
+                earliestDependent = Math.min(earliestDependent, positions[graph.dependent(order[i], j).index()]);
+            }
+            latest = Math.max(latest, earliestDependent);
+        }
+        // ...and the later steps are descendants if each of them has a dependency no earlier than the step
+        final List<StepId> serializingSteps = new ArrayList<>();
+        final int[] reachedFrom = new int[scheduled];
+        int earliest = Integer.MAX_VALUE;
+        for (int i = scheduled - 1; i >= 0; i--) {
+            reachedFrom[i] = earliest;
+            int latestDependency = -1;
+            for (int j = 0; j < graph.dependencyCount(order[i]); j++) {
+                latestDependency = Math.max(latestDependency, positions[graph.dependency(order[i], j)]);
+            }
+            earliest = Math.min(earliest, latestDependency);
+        }
+        for (int i = 0; i < scheduled; i++) {
+            if (reachesBy[i] <= i && reachedFrom[i] >= i) {
+                serializingSteps.add(graph.step(order[i]).id());
+            }
+        }
+        this.stepCount = stepCount;
+        this.scheduledStepCount = scheduled;
+        this.depth = depth;
+        this.widestLevel = widestLevel;
+        this.maxFanIn = maxFanIn;
+        this.maxFanOut = maxFanOut;
+        this.serializingSteps = List.copyOf(serializingSteps);
+    }
+
+    /**
+     * {@return the total number of steps in the chain, including lazy steps}
+     */
+    public int stepCount() {
+        return stepCount;
+    }
+
+    /**
+     * {@return the number of steps in the chain which are scheduled, which excludes lazy steps}
+     */
+    public int scheduledStepCount() {
+        return scheduledStepCount;
+    }
+
+    /**
+     * {@return the number of steps on the longest path through the chain, which is the least number of steps that
+     * must run one after another however many threads are available}
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Get the size of the widest level of the chain, which is the largest number of steps at the same depth (that is,
+     * whose longest paths from the start of the chain have the same number of steps). Steps at the same depth do not
+     * depend on each other, so they may all run at the same time. This is only a lower bound on the number of steps
+     * which may run at the same time, because steps at different depths may also be independent of each other.
+     *
+     * @return the number of steps in the widest level of the chain
+     */
+    public int widestLevel() {
+        return widestLevel;
+    }
+
+    /**
+     * {@return the largest number of steps that any one step depends on}
+     */
+    public int maxFanIn() {
+        return maxFanIn;
+    }
+
+    /**
+     * {@return the largest number of steps that depend on any one step}
+     */
+    public int maxFanOut() {
+        return maxFanOut;
+    }
+
+    /**
+     * Get the steps with the most dependencies, which wait for the most other steps to complete.
+     *
+     * @param count the maximum number of steps to return (must not be negative)
+     * @return the steps, with the most dependencies first (not {@code null})
+     */
+    public List<StepId> fanInHotspots(int count) {
+        Assert.checkMinimumParameter("count", 0, count);
+        return hotspots(count, Comparator.comparingInt(graph::dependencyCount));
+    }
+
+    /**
+     * Get the steps with the most dependents, whose completion releases the most other steps.
+     *
+     * @param count the maximum number of steps to return (must not be negative)
+     * @return the steps, with the most dependents first (not {@code null})
+     */
+    public List<StepId> fanOutHotspots(int count) {
+        Assert.checkMinimumParameter("count", 0, count);
+        return hotspots(count, Comparator.comparingInt(graph::dependentCount));
+    }
+
+    private List<StepId> hotspots(final int count, final Comparator<Integer> comparator) {
+        final int[] order = graph.order();
+        final Integer[] steps = new Integer[order.length];
+        for (int i = 0; i < order.length; i++) {
+            steps[i] = Integer.valueOf(order[i]);
+        }
+        // stable, so ties are in order of execution
+        Arrays.sort(steps, comparator.reversed());
+        final List<StepId> result = new ArrayList<>(Math.min(count, steps.length));
+        for (int i = 0; i < steps.length && i < count; i++) {
+            result.add(graph.step(steps[i].intValue()).id());
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * Get the steps which serialize the chain. Every other scheduled step either must complete before a serializing
+     * step starts, or cannot start until it completes, so no other step can run at the same time as a serializing
+     * step.
+     *
+     * @return the serializing steps, in order of execution (not {@code null})
+     */
+    public List<StepId> serializingSteps() {
+        return serializingSteps;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainAnalysis[steps=" + stepCount + ", scheduled=" + scheduledStepCount + ", depth=" + depth
+                + ", widestLevel=" + widestLevel + ", maxFanIn=" + maxFanIn + ", maxFanOut=" + maxFanOut + ", serializing="
+                + serializingSteps.size() + "]";
+    }
+}
@@ -0,0 +1,885 @@
+package io.quarkus.qlue;
+
+import static io.quarkus.qlue._private.Messages.log;
+import static java.lang.invoke.MethodHandles.Lookup;
+import static java.lang.invoke.MethodHandles.lookup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import io.quarkus.qlue.item.ClassItem;
+import io.quarkus.qlue.item.InstanceItem;
+import io.quarkus.qlue.item.Item;
+import io.smallrye.common.constraint.Assert;
+
+/**
+ * A chain builder.
+ * <p>
+ * Steps and items may be added to a chain builder from multiple threads concurrently. The builder's configuration
+ * (such as its {@linkplain #setInjectionMapper(InjectionMapper) injection mapper}) should be established before steps
+ * are added, and the builder must not be built while steps are still being added to it. Steps which are added
+ * concurrently are wired in the order that they were added, which is not predictable, but the resultant chain
+ * behaves the same regardless. However, {@linkplain ChainSnapshot snapshots} and {@linkplain ChainCache caches}
+ * identify a chain builder by the order of its steps, so a builder whose steps were added concurrently generally
+ * does not match a snapshot or cached wiring, and is wired normally instead.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class ChainBuilder {
+
+    // StepBuilders are compared by identity deliberately; they are kept in the order that they were added
+    final Set<StepBuilder> steps = new StepSet();
+    final Set<ItemId> initialIds = ConcurrentHashMap.newKeySet();
+    final Set<ItemId> finalIds = ConcurrentHashMap.newKeySet();
+    InjectionMapper injectionMapper = InjectionMapper.BASIC;
+    ClassLoader classLoader = ChainBuilder.class.getClassLoader();
+    boolean fuseStepClassConstruction;
+    boolean reduceDependencies;
+    boolean incremental;
+    final Map<Class<? extends BooleanSupplier>, Boolean> conditions;
+    // the index of the chain that this builder was derived from, and the steps added and removed since then
+    WiringIndex base;
+    Set<StepBuilder> added;
+    Set<StepBuilder> removed;
+
+    ChainBuilder() {
+        conditions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Construct a builder which is used to scan step classes on behalf of the given builder.
+     *
+     * @param parent the builder to scan for (not {@code null})
+     */
+    private ChainBuilder(final ChainBuilder parent) {
+        injectionMapper = parent.injectionMapper;
+        classLoader = parent.classLoader;
+        fuseStepClassConstruction = parent.fuseStepClassConstruction;
+        // evaluate each condition once across all scanners
+        conditions = parent.conditions;
+    }
+
+    /**
+     * Get a copy of this builder, with the same steps, items, and configuration.
+     *
+     * @return the copy (not {@code null})
+     */
+    ChainBuilder copy() {
+        final ChainBuilder copy = new ChainBuilder();
+        copy.steps.addAll(steps);
+        copy.initialIds.addAll(initialIds);
+        copy.finalIds.addAll(finalIds);
+        copy.injectionMapper = injectionMapper;
+        copy.classLoader = classLoader;
+        copy.fuseStepClassConstruction = fuseStepClassConstruction;
+        copy.reduceDependencies = reduceDependencies;
+        copy.incremental = incremental;
+        copy.conditions.putAll(conditions);
+        return copy;
+    }
+
+    /**
+     * Get a copy of this builder which is derived from the chain with the given index.
+     *
+     * @param base the retained index of the chain (not {@code null})
+     * @return the derived builder (not {@code null})
+     */
+    ChainBuilder derive(WiringIndex base) {
+        final ChainBuilder derived = copy();
+        derived.base = base;
+        derived.added = ConcurrentHashMap.newKeySet();
+        derived.removed = ConcurrentHashMap.newKeySet();
+        return derived;
+    }
+
+    /**
+     * Add a step to the chain. The configuration in the step builder at the time that the chain is built is
+     * the configuration that will apply to the step in the final chain. Any subsequent changes will be ignored.
+     * <p>
+     * A given step is included in the chain when one or more of the following criteria are met:
+     * <ul>
+     * <li>It includes a produce step for an item which is consumed by a step that is included in the chain or is a final
+     * item</li>
+     * <li>It includes a consume step for an item which is produced by a step that is included in the chain or is an
+     * initial item</li>
+     * </ul>
+     * In addition, the declaration of producers and consumers can cause corresponding consumers and producers to be
+     * included if they exist.
+     *
+     * @param step the step instance
+     * @return the builder for the step
+     */
+    public StepBuilder addRawStep(Consumer<StepContext> step) {
+        return new StepBuilder(this, step);
+    }
+
+    /**
+     * Declare an initial item that will be provided to steps in the chain. Note that if this method is called
+     * for a simple item, no steps will be allowed to produce that item.
+     *
+     * @param type the item type (must not be {@code null})
+     * @return this builder
+     * @throws IllegalArgumentException if the item type is {@code null}
+     */
+    public ChainBuilder addInitial(Class<? extends Item> type) {
+        Assert.checkNotNullParam("type", type);
+        if (ClassItem.class.isAssignableFrom(type)) {
+            throw log.namedNeedsArgument(type);
+        }
+        initialIds.add(new ItemId(type));
+        return this;
+    }
+
+    /**
+     * Declare an initial item that will be provided to steps in the chain. Note that if this method is called
+     * for a simple item, no steps will be allowed to produce that item.
+     *
+     * @param type the item type (must not be {@code null})
+     * @param argument the item argument (must not be {@code null})
+     * @param <U> the upper bound of the argument type
+     * @return this builder
+     * @throws IllegalArgumentException if the item type is {@code null}
+     */
+    public <U> ChainBuilder addInitial(Class<? extends ClassItem<U>> type, Class<? extends U> argument) {
+        Assert.checkNotNullParam("type", type);
+        Assert.checkNotNullParam("argument", argument);
+        initialIds.add(new ItemId(type, argument));
+        return this;
+    }
+
+    /**
+     * Declare a final item that will be consumable after the step chain completes. This may be any item
+     * that is produced in the chain.
+     *
+     * @param type the item type (must not be {@code null})
+     * @return this builder
+     * @throws IllegalArgumentException if the item type is {@code null}
+     */
+    public ChainBuilder addFinal(Class<? extends Item> type) {
+        Assert.checkNotNullParam("type", type);
+        if (ClassItem.class.isAssignableFrom(type)) {
+            throw log.namedNeedsArgument(type);
+        }
+        finalIds.add(new ItemId(type));
+        return this;
+    }
+
+    /**
+     * Declare a final item that will be consumable after the step chain completes. This may be any item
+     * that is produced in the chain.
+     *
+     * @param type the item type (must not be {@code null})
+     * @param argument the item argument (must not be {@code null})
+     * @param <U> the upper bound of the argument type
+     * @return this builder
+     * @throws IllegalArgumentException if the item type is {@code null}
+     */
+    public <U> ChainBuilder addFinal(Class<? extends ClassItem<U>> type, Class<? extends U> argument) {
+        Assert.checkNotNullParam("type", type);
+        Assert.checkNotNullParam("argument", argument);
+        finalIds.add(new ItemId(type, argument));
+        return this;
+    }
+
+    /**
+     * Set the injection mapper to use for subsequent step class and object handling.
+     *
+     * @param injectionMapper the injection mapper to use (must not be {@code null})
+     * @return this builder
+     */
+    public ChainBuilder setInjectionMapper(final InjectionMapper injectionMapper) {
+        this.injectionMapper = Assert.checkNotNullParam("injectionMapper", injectionMapper);
+        return this;
+    }
+
+    /**
+     * Establish whether the construction of subsequently added step classes should be fused into their step methods.
+     * When enabled, a step class whose constructor and fields do not consume any items is constructed by whichever
+     * of its steps runs first in each execution, rather than by a separate step which every step method depends on.
+     * This removes a node and a scheduling hop from the chain for each such class. Step classes which do consume
+     * items are constructed by a separate step as usual.
+     *
+     * @param fuseStepClassConstruction {@code true} to fuse construction of stateless step classes, or {@code false}
+     *        to always construct step classes in a separate step (the default)
+     * @return this builder
+     */
+    public ChainBuilder setFuseStepClassConstruction(final boolean fuseStepClassConstruction) {
+        this.fuseStepClassConstruction = fuseStepClassConstruction;
+        return this;
+    }
+
+    /**
+     * Evaluate a step condition. Each condition class is instantiated and evaluated at most once per chain builder,
+     * unless its result was {@linkplain #setConditionResult(Class, boolean) given} in advance.
+     *
+     * @param clazz the condition class (must not be {@code null})
+     * @return the result of the condition
+     */
+    public boolean evaluateCondition(final Class<? extends BooleanSupplier> clazz) {
+        Assert.checkNotNullParam("clazz", clazz);
+        return conditions.computeIfAbsent(clazz, ReflectUtil::evaluateCondition).booleanValue();
+    }
+
+    /**
+     * Establish the result of a step condition, so that the condition class is not instantiated or evaluated.
+     * The result only applies to steps which are subsequently added to this builder.
+     *
+     * @param clazz the condition class (must not be {@code null})
+     * @param result the condition result
+     * @return this builder
+     */
+    public ChainBuilder setConditionResult(final Class<? extends BooleanSupplier> clazz, final boolean result) {
+        Assert.checkNotNullParam("clazz", clazz);
+        conditions.put(clazz, Boolean.valueOf(result));
+        return this;
+    }
+
+    /**
+     * Establish whether the dependencies of the steps of built chains should be transitively reduced. When enabled,
+     * a step does not directly wait for a dependency which another of its dependencies already waits for (directly
+     * or indirectly), so each step completion notifies fewer dependents. The order in which steps may run is not
+     * changed, so every item is still produced before any step which consumes it is run. Reduction takes time and
+     * memory proportional to the number of steps multiplied by the number of dependency edges, so it is best
+     * suited to chains which are built once and executed many times.
+     *
+     * @param reduceDependencies {@code true} to reduce step dependencies, or {@code false} to retain every direct
+     *        dependency (the default)
+     * @return this builder
+     */
+    public ChainBuilder setReduceDependencies(final boolean reduceDependencies) {
+        this.reduceDependencies = reduceDependencies;
+        return this;
+    }
+
+    /**
+     * Establish whether chains built by this builder should retain their wiring index, so that they can be
+     * {@linkplain Chain#toBuilder() rebuilt} incrementally after some of their steps are added or removed. The index
+     * retains the steps of the builder along with the producers and consumers of every item, so it should only be
+     * enabled for chains which are expected to be rebuilt, such as during development.
+     *
+     * @param incremental {@code true} to retain the wiring index of built chains, or {@code false} to discard it
+     *        (the default)
+     * @return this builder
+     */
+    public ChainBuilder setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * Add all of the steps defined in the given object's class. The given object instance is used as-is.
+     * Each recognized step method is added as a step which invokes the method, producing any results that are produced
+     * by the method.
+     * Step methods must be {@code public} or accessible from this module.
+     *
+     * @param obj the step object to add (must not be {@code null})
+     * @return this builder
+     */
+    public ChainBuilder addStepObject(Object obj) {
+        return addStepObject(obj, lookup());
+    }
+
+    /**
+     * Add all of the steps defined in the given object's class. The given object instance is used as-is.
+     * Each recognized step method is added as a step which invokes the method, producing any results that are produced
+     * by the method.
+     * Step methods must be accessible according to the given {@link Lookup}.
+     *
+     * @param obj the step object to add (must not be {@code null})
+     * @param lookup a {@link Lookup} whose access privileges should be used (must not be {@code null})
+     * @return this builder
+     */
+    public ChainBuilder addStepObject(Object obj, Lookup lookup) {
+        Assert.checkNotNullParam("obj", obj);
+        Class<?> clazz = obj.getClass();
+        StepClassModel model = StepClassModel.of(clazz);
+        // now create steps for each step method
+        for (Method method : model.methods()) {
+            if (injectionMapper.isStepMethod(this, method, lookup)) {
+                final boolean isStatic = Modifier.isStatic(method.getModifiers());
+                SwitchableConsumer<StepContext> cons = new SwitchableConsumer<>(method.toString());
+                StepBuilder stepBuilder = addRawStep(cons);
+                stepBuilder.id(new MethodStepId(new InstanceStepId(obj), method));
+                Consumer<StepContext> methodHandler = injectionMapper.handleStepMethod(stepBuilder, method, lookup);
+                int cnt = method.getParameterCount();
+                List<Function<StepContext, Object>> methodParamVals = new ArrayList<>(cnt);
+                for (int i = 0; i < cnt; i++) {
+                    methodParamVals.add(injectionMapper.handleParameter(stepBuilder, method, i, lookup));
+                }
+                BiConsumer<StepContext, Object> retHandler = injectionMapper.handleReturnValue(stepBuilder, method, lookup);
+                // the method is only unreflected if the step is included in a chain
+                cons.setInitializer(() -> {
+                    final MethodHandle methodHandle;
+                    try {
+                        methodHandle = model.unreflect(lookup, method);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalArgumentException("Cannot access step method", e);
+                    }
+                    MethodHandle invoker = isStatic ? StepInvokers.compile(methodHandle, methodParamVals)
+                            : StepInvokers.compileVirtual(methodHandle, methodParamVals).bindTo(obj);
+                    return new Consumer<StepContext>() {
+                        public void accept(final StepContext stepContext) {
+                            methodHandler.accept(stepContext);
+                            Object retVal;
+                            try {
+                                retVal = (Object) invoker.invokeExact(stepContext);
+                            } catch (Throwable t) {
+                                log.failedToInvokeMethod(method, t);
+                                stepContext.addProblem(t);
+                                return;
+                            }
+                            retHandler.accept(stepContext, retVal);
+                        }
+                    };
+                });
+                stepBuilder.build();
+            }
+        }
+        // done
+        return this;
+    }
+
+    /**
+     * Add all of the steps defined in the given class. The construction of the class itself is
+     * added as a step which consumes the injected dependencies of the class and produces the
+     * corresponding {@link InstanceItem}. Each recognized step method is added as a step
+     * which consumes the {@code StepClassItem} and the injected dependencies of the method, and subsequently invokes
+     * the method, producing any results that are produced by the method. Static step methods do not consume the
+     * {@code StepClassItem}.
+     *
+     * @param clazz the step class to add (must not be {@code null})
+     * @param <T> the step class type
+     * @return this builder
+     */
+    public <T> ChainBuilder addStepClass(Class<T> clazz) {
+        return addStepClass(clazz, lookup());
+    }
+
+    /**
+     * Add all of the steps defined in the given class. The construction of the class itself is
+     * added as a step which consumes the injected dependencies of the class and produces the
+     * corresponding {@link InstanceItem}. Each recognized step method is added as a step
+     * which consumes the {@code StepClassItem} and the injected dependencies of the method, and subsequently invokes
+     * the method, producing any results that are produced by the method. Static step methods do not consume the
+     * {@code StepClassItem}.
+     *
+     * @param clazz the step class to add (must not be {@code null})
+     * @param lookup the {@link Lookup} to use (must not be {@code null})
+     * @param <T> the step class type
+     * @return this builder
+     */
+    public <T> ChainBuilder addStepClass(Class<T> clazz, Lookup lookup) {
+        Assert.checkNotNullParam("clazz", clazz);
+        StepClassModel model = StepClassModel.of(clazz);
+        boolean staticSteps = false;
+        List<Method> stepMethods = new ArrayList<>();
+        for (Method method : model.methods()) {
+            if (injectionMapper.isStepMethod(this, method, lookup)) {
+                if (Modifier.isStatic(method.getModifiers())) {
+                    // static step methods need no instance
+                    addMethodStep(clazz, model, lookup, method, null, false);
+                    staticSteps = true;
+                } else {
+                    stepMethods.add(method);
+                }
+            }
+        }
+        SwitchableConsumer<StepContext> cons = new SwitchableConsumer<>(clazz.toString());
+        // this is the step builder for the class producer
+        StepBuilder classStepBuilder = addRawStep(cons);
+        classStepBuilder.produces(InstanceItem.class, clazz);
+        // get the overall class handler
+        Consumer<StepContext> classHandler = injectionMapper.handleClass(classStepBuilder, clazz, lookup);
+        MethodHandle mh = null;
+        Constructor<?> ctor = null;
+        // find a constructor
+        for (Constructor<?> constructor : model.constructors()) {
+            MethodHandle tmp;
+            try {
+                ctor = constructor;
+                tmp = model.unreflectConstructor(lookup, constructor);
+            } catch (IllegalAccessException e) {
+                continue;
+            }
+            if (mh != null) {
+                throw log.multipleConstructors(clazz);
+            }
+            classStepBuilder.id(new MethodStepId(constructor));
+            mh = tmp;
+        }
+        // no eligible constructor found
+        if (mh == null) {
+            if (staticSteps && stepMethods.isEmpty()) {
+                // the class is never instantiated
+                return this;
+            }
+            throw log.noConstructor(clazz);
+        }
+        // process each parameter
+        int cnt = mh.type().parameterCount();
+        List<Function<StepContext, Object>> ctorParamVals = new ArrayList<>(cnt);
+        for (int i = 0; i < cnt; i++) {
+            ctorParamVals.add(injectionMapper.handleParameter(classStepBuilder, ctor, i, lookup));
+        }
+        // check out each field
+        List<Field> fields = model.injectableFields();
+        List<Function<StepContext, Object>> fieldVals = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            fieldVals.add(injectionMapper.handleField(classStepBuilder, field, lookup));
+        }
+        Consumer<StepContext> classFinish = injectionMapper.handleClassFinish(classStepBuilder, clazz, lookup);
+        // the construction function is only created if the class is instantiated by an included step
+        final Constructor<?> finalCtor = ctor;
+        final MethodHandle finalMh = mh;
+        final OnceSupplier<Function<StepContext, Object>> construction = new OnceSupplier<>(() -> {
+            final MethodHandle constructor = StepInvokers.compile(finalMh, ctorParamVals);
+            final List<BiConsumer<Object, StepContext>> fieldInjections = new ArrayList<>(fields.size());
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                MethodHandle setter;
+                try {
+                    setter = model.unreflectSetter(lookup, field);
+                } catch (IllegalAccessException e) {
+                    throw log.notAccessible(field, lookup.lookupClass(), e);
+                }
+                MethodHandle injector = StepInvokers.compileSetter(setter, fieldVals.get(i));
+                fieldInjections.add((instance, ctxt) -> {
+                    try {
+                        injector.invokeExact(instance, ctxt);
+                    } catch (Throwable e) {
+                        log.failedToSetField(field, e);
+                        ctxt.addProblem(e);
+                        return;
+                    }
+                });
+            }
+            return stepContext -> {
+                classHandler.accept(stepContext);
+                // construct
+                final Object instance;
+                try {
+                    instance = (Object) constructor.invokeExact(stepContext);
+                } catch (Throwable t) {
+                    log.failedToInvokeConstructor(finalCtor, t);
+                    stepContext.addProblem(t);
+                    return null;
+                }
+                // inject fields
+                for (BiConsumer<Object, StepContext> injection : fieldInjections) {
+                    injection.accept(instance, stepContext);
+                }
+                classFinish.accept(stepContext);
+                return instance;
+            };
+        });
+        // a class which consumes nothing to be constructed may be constructed by whichever step needs it first
+        final boolean fused = fuseStepClassConstruction && classStepBuilder.getConsumes().isEmpty();
+        final Object instanceKey = cons;
+        // now create the real class build step
+        cons.setInitializer(() -> {
+            final Function<StepContext, Object> construct = construction.get();
+            return stepContext -> {
+                final Object instance = fused ? stepContext.stepClassInstance(instanceKey, construct)
+                        : construct.apply(stepContext);
+                if (instance != null) {
+                    // and we're set
+                    stepContext.produce(clazz, new InstanceItem(instance));
+                }
+            };
+        });
+        classStepBuilder.build();
+        // now create steps for each step method
+        for (Method method : stepMethods) {
+            if (fused) {
+                addMethodStep(clazz, model, lookup, method, () -> {
+                    final Function<StepContext, Object> construct = construction.get();
+                    return stepContext -> {
+                        final Object instance = stepContext.stepClassInstance(instanceKey, construct);
+                        if (instance == null) {
+                            throw log.stepClassNotConstructed(clazz);
+                        }
+                        return instance;
+                    };
+                }, false);
+            } else {
+                addMethodStep(clazz, model, lookup, method, () -> stepContext -> stepContext
+                        .consume(InstanceItem.class, clazz).instance(), true);
+            }
+        }
+        // done
+        return this;
+    }
+
+    /**
+     * Add a step for a step method of a step class.
+     *
+     * @param clazz the step class (not {@code null})
+     * @param model the step class model (not {@code null})
+     * @param lookup the lookup to use (not {@code null})
+     * @param method the step method (not {@code null})
+     * @param receivers the supplier of the function which yields the receiver of the method, or {@code null} if
+     *        the method is static
+     * @param consumesInstance {@code true} if the step consumes the {@code StepClassItem} of the class
+     */
+    private void addMethodStep(Class<?> clazz, StepClassModel model, Lookup lookup, Method method,
+            Supplier<Function<StepContext, Object>> receivers, boolean consumesInstance) {
+        SwitchableConsumer<StepContext> cons = new SwitchableConsumer<>(method.toString());
+        StepBuilder stepBuilder = addRawStep(cons);
+        stepBuilder.id(new MethodStepId(method));
+        if (consumesInstance) {
+            stepBuilder.consumes(InstanceItem.class, clazz);
+        }
+        Consumer<StepContext> methodHandler = injectionMapper.handleStepMethod(stepBuilder, method, lookup);
+        int cnt = method.getParameterCount();
+        List<Function<StepContext, Object>> methodParamVals = new ArrayList<>(cnt);
+        for (int i = 0; i < cnt; i++) {
+            methodParamVals.add(injectionMapper.handleParameter(stepBuilder, method, i, lookup));
+        }
+        BiConsumer<StepContext, Object> retHandler = injectionMapper.handleReturnValue(stepBuilder, method, lookup);
+        // the method is only unreflected if the step is included in a chain
+        cons.setInitializer(() -> {
+            MethodHandle invoker;
+            try {
+                invoker = model.unreflect(lookup, method);
+            } catch (IllegalAccessException e) {
+                throw ReflectUtil.toError(e);
+            }
+            final MethodHandle compiled;
+            final Function<StepContext, Object> receiver;
+            if (receivers == null) {
+                compiled = StepInvokers.compileStatic(invoker, methodParamVals);
+                receiver = stepContext -> null;
+            } else {
+                compiled = StepInvokers.compileVirtual(invoker, methodParamVals);
+                receiver = receivers.get();
+            }
+            return new Consumer<StepContext>() {
+                public void accept(final StepContext stepContext) {
+                    Object instance = receiver.apply(stepContext);
+                    methodHandler.accept(stepContext);
+                    Object retVal;
+                    try {
+                        retVal = (Object) compiled.invokeExact(instance, stepContext);
+                    } catch (Throwable e) {
+                        log.failedToInvokeMethod(method, e);
+                        stepContext.addProblem(e);
+                        return;
+                    }
+                    retHandler.accept(stepContext, retVal);
+                }
+            };
+        });
+        stepBuilder.build();
+    }
+
+    /**
+     * Add all of the steps defined in each of the given classes, as if by calling {@link #addStepClass(Class)} for
+     * each class in turn. The classes are scanned in parallel, but the resultant steps are added in the order in
+     * which the classes are given.
+     *
+     * @param classes the step classes to add (must not be {@code null})
+     * @return this builder
+     */
+    public ChainBuilder addStepClasses(Collection<? extends Class<?>> classes) {
+        return addStepClasses(classes, lookup());
+    }
+
+    /**
+     * Add all of the steps defined in each of the given classes, as if by calling {@link #addStepClass(Class, Lookup)}
+     * for each class in turn. The classes are scanned in parallel, but the resultant steps are added in the order in
+     * which the classes are given. The {@linkplain #setInjectionMapper(InjectionMapper) injection mapper} must
+     * tolerate concurrent use.
+     *
+     * @param classes the step classes to add (must not be {@code null})
+     * @param lookup the {@link Lookup} to use (must not be {@code null})
+     * @return this builder
+     */
+    public ChainBuilder addStepClasses(Collection<? extends Class<?>> classes, Lookup lookup) {
+        Assert.checkNotNullParam("classes", classes);
+        Assert.checkNotNullParam("lookup", lookup);
+        final List<ChainBuilder> scanned = classes.parallelStream()
+                .map(clazz -> {
+                    final ChainBuilder scanner = new ChainBuilder(this);
+                    scanner.addStepClass(clazz, lookup);
+                    return scanner;
+                })
+                .toList();
+        // merge in encounter order
+        for (ChainBuilder scanner : scanned) {
+            for (StepBuilder stepBuilder : scanner.steps) {
+                stepBuilder.setChainBuilder(this);
+                addStep(stepBuilder);
+            }
+            initialIds.addAll(scanner.initialIds);
+            finalIds.addAll(scanner.finalIds);
+        }
+        return this;
+    }
+
+    /**
+     * Add the steps of the given registrar. A registrar which is generated by the {@code qlue-processor} annotation
+     * processor for a step class adds the same steps as {@link #addStepClass(Class)} would using the
+     * {@linkplain InjectionMapper#BASIC basic injection mapper}, but without using reflection.
+     *
+     * @param registrar the step registrar (must not be {@code null})
+     * @return this builder
+     */
+    public ChainBuilder addSteps(StepRegistrar registrar) {
+        Assert.checkNotNullParam("registrar", registrar);
+        registrar.registerSteps(this);
+        return this;
+    }
+
+    /**
+     * Merge the steps and items of another builder into this builder. This allows separate sets of steps to be added
+     * to separate builders concurrently (for example, one builder per thread), and then merged into a single chain.
+     * See {@link #merge(Collection)} for details.
+     *
+     * @param builder the builder to merge (must not be {@code null})
+     * @return this builder
+     * @throws ChainBuildException if the builder conflicts with this builder
+     */
+    public ChainBuilder merge(ChainBuilder builder) throws ChainBuildException {
+        Assert.checkNotNullParam("builder", builder);
+        return merge(List.of(builder));
+    }
+
+    /**
+     * Merge the steps and items of other builders into this builder, in the given order. This allows separate sets of
+     * steps to be added to separate builders concurrently (for example, one builder per thread), and then merged into
+     * a single chain. The configuration of the merged builders (such as their injection mapper) only applies to the
+     * steps which were added to them, and is not merged. The merged builders should not be used afterwards.
+     * <p>
+     * The builders are checked for conflicts before any of them are merged: a simple item may not be produced by
+     * steps of more than one builder (unless exactly one of the producers is overridable), an initial item of one
+     * builder may not be produced by the steps of another, and no two builders may contain the same step.
+     * If there is a conflict, this builder is left unchanged.
+     *
+     * @param builders the builders to merge (must not be {@code null})
+     * @return this builder
+     * @throws ChainBuildException if the builders conflict with each other or with this builder
+     */
+    public ChainBuilder merge(Collection<ChainBuilder> builders) throws ChainBuildException {
+        Assert.checkNotNullParam("builders", builders);
+        final Set<ItemId> mergedInitialIds = new HashSet<>(initialIds);
+        final Map<StepId, StepBuilder> mergedSteps = new HashMap<>();
+        final Map<ItemId, Set<Produce>> mergedProducers = new HashMap<>();
+        indexForMerge(this, mergedSteps, mergedProducers);
+        for (ChainBuilder builder : builders) {
+            Assert.checkNotNullParam("builder", builder);
+            if (builder == this) {
+                throw log.cannotMergeSelf();
+            }
+            mergedInitialIds.addAll(builder.initialIds);
+            indexForMerge(builder, mergedSteps, mergedProducers);
+        }
+        for (Map.Entry<ItemId, Set<Produce>> entry : mergedProducers.entrySet()) {
+            final ChainBuildException problem = Chain.checkProducers(entry.getKey(), entry.getValue(), mergedInitialIds);
+            if (problem != null) {
+                throw problem;
+            }
+        }
+        // no conflicts; merge in order
+        for (ChainBuilder builder : builders) {
+            for (StepBuilder stepBuilder : builder.steps) {
+                stepBuilder.setChainBuilder(this);
+                addStep(stepBuilder);
+            }
+            initialIds.addAll(builder.initialIds);
+            finalIds.addAll(builder.finalIds);
+        }
+        return this;
+    }
+
+    private static void indexForMerge(final ChainBuilder builder, final Map<StepId, StepBuilder> mergedSteps,
+            final Map<ItemId, Set<Produce>> mergedProducers) throws ChainBuildException {
+        for (StepBuilder stepBuilder : builder.steps) {
+            final StepBuilder existing = mergedSteps.putIfAbsent(stepBuilder.id(), stepBuilder);
+            if (existing != null) {
+                throw log.duplicateStep(stepBuilder.id());
+            }
+            for (Produce produce : stepBuilder.getProduces().values()) {
+                if (produce.isReal() && !produce.itemId().isMulti()) {
+                    mergedProducers.computeIfAbsent(produce.itemId(), ChainBuilder::newHashSet).add(produce);
+                }
+            }
+        }
+    }
+
+    private static <E> Set<E> newHashSet(Object ignored) {
+        return new HashSet<>();
+    }
+
+    /**
+     * Sets the ClassLoader for the execution. Every step will be run with this as the TCCL.
+     *
+     * @param classLoader The ClassLoader
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Build the step chain from the current builder configuration.
+     *
+     * @return the constructed chain
+     * @throws ChainBuildException if the chain could not be built
+     */
+    public Chain build() throws ChainBuildException {
+        return new Chain(this);
+    }
+
+    /**
+     * Build the step chain from the current builder configuration, using the given snapshot to skip the wiring phase.
+     * If the snapshot does not {@linkplain ChainSnapshot#matches(ChainBuilder) match} this builder, the chain is wired
+     * as if by {@link #build()}.
+     *
+     * @param snapshot the snapshot of a previous wiring of the same steps (must not be {@code null})
+     * @return the constructed chain
+     * @throws ChainBuildException if the chain could not be built
+     */
+    public Chain build(ChainSnapshot snapshot) throws ChainBuildException {
+        Assert.checkNotNullParam("snapshot", snapshot);
+        final Chain.Wiring wiring = snapshot.wiring(this);
+        if (wiring == null) {
+            log.snapshotMismatch();
+            return build();
+        }
+        return new Chain(this, wiring);
+    }
+
+    /**
+     * Wire the step chain from the current builder configuration and take a snapshot of the result, which may be
+     * saved and later used to {@linkplain #build(ChainSnapshot) build} a chain from the same steps without wiring it
+     * again. No steps are materialized.
+     *
+     * @return the snapshot (not {@code null})
+     * @throws ChainBuildException if the chain could not be wired
+     */
+    public ChainSnapshot snapshot() throws ChainBuildException {
+        return ChainSnapshot.of(this, Chain.wire(this));
+    }
+
+    void addStep(final StepBuilder stepBuilder) {
+        if (steps.add(stepBuilder) && base != null && !removed.remove(stepBuilder)) {
+            added.add(stepBuilder);
+        }
+    }
+
+    /**
+     * Remove the steps whose identifiers match the given predicate. This is mainly useful for chain builders which
+     * were {@linkplain Chain#toBuilder() derived} from a chain, for example to replace the steps of a step class
+     * which has changed.
+     *
+     * @param predicate the predicate to test each step identifier against (must not be {@code null})
+     * @return this builder
+     */
+    public ChainBuilder removeSteps(Predicate<StepId> predicate) {
+        Assert.checkNotNullParam("predicate", predicate);
+        final Iterator<StepBuilder> iterator = steps.iterator();
+        while (iterator.hasNext()) {
+            final StepBuilder stepBuilder = iterator.next();
+            if (predicate.test(stepBuilder.id())) {
+                iterator.remove();
+                if (base != null && !added.remove(stepBuilder)) {
+                    removed.add(stepBuilder);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * A set of steps which may be added to concurrently without locking, and which iterates in the order that the steps
+     * were added. Steps are compared by identity.
+     */
+    static final class StepSet extends AbstractSet<StepBuilder> {
+        private final Set<StepBuilder> members = ConcurrentHashMap.newKeySet();
+        private final ConcurrentLinkedQueue<StepBuilder> order = new ConcurrentLinkedQueue<>();
+
+        public boolean add(final StepBuilder stepBuilder) {
+            if (members.add(stepBuilder)) {
+                order.add(stepBuilder);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean remove(final Object o) {
+            if (members.remove(o)) {
+                order.remove(o);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean contains(final Object o) {
+            return members.contains(o);
+        }
+
+        public Iterator<StepBuilder> iterator() {
+            final Iterator<StepBuilder> iterator = order.iterator();
+            return new Iterator<StepBuilder>() {
+                StepBuilder current;
+
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                public StepBuilder next() {
+                    return current = iterator.next();
+                }
+
+                public void remove() {
+                    iterator.remove();
+                    members.remove(current);
+                }
+            };
+        }
+
+        public int size() {
+            return members.size();
+        }
+    }
+
+    /**
+     * A supplier which computes its value at most once, when it is first needed.
+     */
+    static final class OnceSupplier<T> implements Supplier<T> {
+        private Supplier<T> initializer;
+        private T value;
+
+        OnceSupplier(final Supplier<T> initializer) {
+            this.initializer = initializer;
+        }
+
+        public synchronized T get() {
+            final Supplier<T> initializer = this.initializer;
+            if (initializer != null) {
+                value = initializer.get();
+                this.initializer = null;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.quarkus.qlue;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.smallrye.common.constraint.Assert;
+
+/**
+ * A bounded cache of chain wirings, for applications which repeatedly build chains from the same steps. Chain builders
+ * are identified by the same fingerprint as {@linkplain ChainSnapshot snapshots}, which covers the consumed and
+ * produced items of each step (in order), along with the initial and final items. Since step conditions are
+ * evaluated when steps are added, the builder only contains the steps whose conditions were met. Builders whose
+ * steps were added concurrently are unlikely to have their steps in the same order each time, so they rarely hit
+ * the cache.
+ * <p>
+ * When a chain is built from a builder whose fingerprint is in the cache, the wiring phase is skipped and the chain is
+ * assembled from the builder's own steps, so the resultant chain runs the step instances of the builder it was built
+ * from. When the cache is full, the least recently used wiring is evicted.
+ * <p>
+ * Caches are safe to use from multiple threads.
+ */
+public final class ChainCache {
+    private final Map<ByteBuffer, ChainSnapshot> snapshots;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param maximumSize the maximum number of wirings to retain (must be at least 1)
+     */
+    public ChainCache(int maximumSize) {
+        Assert.checkMinimumParameter("maximumSize", 1, maximumSize);
+        snapshots = new LinkedHashMap<>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, ChainSnapshot> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Build a chain from the current configuration of the given builder, reusing a cached wiring if the builder
+     * matches one which was previously built using this cache.
+     *
+     * @param chainBuilder the chain builder (must not be {@code null})
+     * @return the constructed chain (not {@code null})
+     * @throws ChainBuildException if the chain could not be built
+     */
+    public Chain build(ChainBuilder chainBuilder) throws ChainBuildException {
+        Assert.checkNotNullParam("chainBuilder", chainBuilder);
+        final byte[] fingerprint = ChainSnapshot.fingerprint(chainBuilder);
+        final ByteBuffer key = ByteBuffer.wrap(fingerprint);
+        final ChainSnapshot snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.get(key);
+        }
+        if (snapshot != null) {
+            final Chain.Wiring wiring = snapshot.wiring(chainBuilder, fingerprint);
+            if (wiring != null) {
+                return new Chain(chainBuilder, wiring);
+            }
+        }
+        final Chain.Wiring wiring = Chain.wire(chainBuilder);
+        synchronized (snapshots) {
+            snapshots.put(key, ChainSnapshot.of(chainBuilder, wiring, fingerprint));
+        }
+        return new Chain(chainBuilder, wiring);
+    }
+
+    /**
+     * {@return the number of wirings in this cache}
+     */
+    public int size() {
+        synchronized (snapshots) {
+            return snapshots.size();
+        }
+    }
+
+    /**
+     * Remove all of the wirings from this cache.
+     */
+    public void clear() {
+        synchronized (snapshots) {
+            snapshots.clear();
+        }
+    }
+}
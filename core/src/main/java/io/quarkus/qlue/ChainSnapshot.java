@@ -0,0 +1,346 @@
+package io.quarkus.qlue;
+
+import static io.quarkus.qlue._private.Messages.log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import io.smallrye.common.constraint.Assert;
+
+/**
+ * A snapshot of the wiring of a chain: which of the steps of a chain builder are included in the chain, and which
+ * steps each of them depends upon. A chain can be {@linkplain ChainBuilder#build(ChainSnapshot) built} from a
+ * snapshot without repeating the wiring phase, as long as the chain builder has the same steps, with the same
+ * consumes and produces, in the same order as the chain builder that the snapshot was
+ * {@linkplain ChainBuilder#snapshot() taken} from. This is verified using a fingerprint of the chain builder.
+ * Since the fingerprint depends on the order of the steps, a chain builder whose steps were added from several
+ * threads concurrently (in an unpredictable order) generally does not match a snapshot.
+ * <p>
+ * Snapshots may be written to and read from a compact binary form.
+ */
+public final class ChainSnapshot {
+    // "QLUE"
+    private static final int MAGIC = 0x514c5545;
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_SIZE = 32;
+    private static final int FLAG_LAZY = 1;
+
+    private final byte[] fingerprint;
+    private final int stepCount;
+    // the indexes of the included steps, in order
+    private final int[] included;
+    private final byte[] flags;
+    // the dependencies of included step i are at edges[edgeStarts[i]] until edges[edgeStarts[i + 1]]
+    private final int[] edgeStarts;
+    private final int[] edges;
+
+    private ChainSnapshot(final byte[] fingerprint, final int stepCount, final int[] included, final byte[] flags,
+            final int[] edgeStarts, final int[] edges) {
+        this.fingerprint = fingerprint;
+        this.stepCount = stepCount;
+        this.included = included;
+        this.flags = flags;
+        this.edgeStarts = edgeStarts;
+        this.edges = edges;
+    }
+
+    static ChainSnapshot of(final ChainBuilder chainBuilder, final Chain.Wiring wiring) {
+        return of(chainBuilder, wiring, fingerprint(chainBuilder));
+    }
+
+    static ChainSnapshot of(final ChainBuilder chainBuilder, final Chain.Wiring wiring, final byte[] fingerprint) {
+        final List<StepBuilder> steps = new ArrayList<>(chainBuilder.steps);
+        final Map<StepBuilder, Integer> stepIndexes = new IdentityHashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            stepIndexes.put(steps.get(i), Integer.valueOf(i));
+        }
+        final List<StepBuilder> includedSteps = wiring.included();
+        final Map<StepBuilder, Integer> includedIndexes = new IdentityHashMap<>();
+        final int[] included = new int[includedSteps.size()];
+        final byte[] flags = new byte[included.length];
+        for (int i = 0; i < included.length; i++) {
+            final StepBuilder builder = includedSteps.get(i);
+            included[i] = stepIndexes.get(builder).intValue();
+            includedIndexes.put(builder, Integer.valueOf(i));
+            if (wiring.lazy().contains(builder)) {
+                flags[i] = FLAG_LAZY;
+            }
+        }
+        final int[] edgeStarts = new int[included.length + 1];
+        int[] edges = new int[included.length];
+        int edgeCount = 0;
+        for (int i = 0; i < included.length; i++) {
+            edgeStarts[i] = edgeCount;
+            final Set<StepBuilder> dependencies = wiring.dependencies().getOrDefault(includedSteps.get(i), Set.of());
+            final int[] targets = new int[dependencies.size()];
+            int j = 0;
+            for (StepBuilder dependency : dependencies) {
+                targets[j++] = includedIndexes.get(dependency).intValue();
+            }
+            // sort so that equal wirings produce equal snapshots
+            Arrays.sort(targets);
+            if (edgeCount + targets.length > edges.length) {
+                edges = Arrays.copyOf(edges, Math.max(edges.length << 1, edgeCount + targets.length));
+            }
+            System.arraycopy(targets, 0, edges, edgeCount, targets.length);
+            edgeCount += targets.length;
+        }
+        edgeStarts[included.length] = edgeCount;
+        return new ChainSnapshot(fingerprint, steps.size(), included, flags, edgeStarts, Arrays.copyOf(edges, edgeCount));
+    }
+
+    /**
+     * Get the wiring of the given chain builder according to this snapshot.
+     *
+     * @param chainBuilder the chain builder (not {@code null})
+     * @return the wiring, or {@code null} if this snapshot does not match the chain builder
+     */
+    Chain.Wiring wiring(final ChainBuilder chainBuilder) {
+        return wiring(chainBuilder, fingerprint(chainBuilder));
+    }
+
+    /**
+     * Get the wiring of the given chain builder according to this snapshot.
+     *
+     * @param chainBuilder the chain builder (not {@code null})
+     * @param fingerprint the fingerprint of the chain builder (not {@code null})
+     * @return the wiring, or {@code null} if this snapshot does not match the chain builder
+     */
+    Chain.Wiring wiring(final ChainBuilder chainBuilder, final byte[] fingerprint) {
+        final List<StepBuilder> steps = new ArrayList<>(chainBuilder.steps);
+        final Set<ItemId> initialIds = Set.copyOf(chainBuilder.initialIds);
+        final Set<ItemId> finalIds = Set.copyOf(chainBuilder.finalIds);
+        if (steps.size() != stepCount || !Arrays.equals(this.fingerprint, fingerprint)) {
+            return null;
+        }
+        final List<StepBuilder> includedSteps = new ArrayList<>(included.length);
+        for (int index : included) {
+            includedSteps.add(steps.get(index));
+        }
+        final Map<StepBuilder, Set<StepBuilder>> dependencies = new HashMap<>();
+        final Set<StepBuilder> lazy = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < included.length; i++) {
+            final int start = edgeStarts[i];
+            final int end = edgeStarts[i + 1];
+            if (start != end) {
+                final Set<StepBuilder> set = new HashSet<>();
+                for (int j = start; j < end; j++) {
+                    set.add(includedSteps.get(edges[j]));
+                }
+                dependencies.put(includedSteps.get(i), set);
+            }
+            if ((flags[i] & FLAG_LAZY) != 0) {
+                lazy.add(includedSteps.get(i));
+            }
+        }
+        return new Chain.Wiring(initialIds, finalIds, includedSteps, dependencies, lazy, null);
+    }
+
+    /**
+     * Determine whether this snapshot matches the given chain builder, in which case a chain built from the builder
+     * using this snapshot would skip the wiring phase.
+     *
+     * @param chainBuilder the chain builder (must not be {@code null})
+     * @return {@code true} if the snapshot matches, or {@code false} if it does not
+     */
+    public boolean matches(ChainBuilder chainBuilder) {
+        Assert.checkNotNullParam("chainBuilder", chainBuilder);
+        return chainBuilder.steps.size() == stepCount && Arrays.equals(fingerprint, fingerprint(chainBuilder));
+    }
+
+    /**
+     * Write this snapshot to the given stream. The stream is not closed.
+     *
+     * @param os the output stream (must not be {@code null})
+     * @throws IOException if the write failed
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        Assert.checkNotNullParam("os", os);
+        final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.write(fingerprint);
+        dos.writeInt(stepCount);
+        dos.writeInt(included.length);
+        dos.writeInt(edges.length);
+        for (int index : included) {
+            dos.writeInt(index);
+        }
+        dos.write(flags);
+        for (int edgeStart : edgeStarts) {
+            dos.writeInt(edgeStart);
+        }
+        for (int edge : edges) {
+            dos.writeInt(edge);
+        }
+        dos.flush();
+    }
+
+    /**
+     * Write this snapshot to the given file, replacing any existing file.
+     *
+     * @param path the file path (must not be {@code null})
+     * @throws IOException if the write failed
+     */
+    public void write(Path path) throws IOException {
+        Assert.checkNotNullParam("path", path);
+        try (OutputStream os = Files.newOutputStream(path)) {
+            writeTo(os);
+        }
+    }
+
+    /**
+     * Read a snapshot from the given stream. The stream is not closed.
+     *
+     * @param is the input stream (must not be {@code null})
+     * @return the snapshot (not {@code null})
+     * @throws IOException if the read failed or the stream does not contain a valid snapshot
+     */
+    public static ChainSnapshot readFrom(InputStream is) throws IOException {
+        Assert.checkNotNullParam("is", is);
+        return readFrom(ByteBuffer.wrap(is.readAllBytes()));
+    }
+
+    /**
+     * Read a snapshot from the given file. The file is mapped into memory and read in place rather than through a
+     * stream, but its contents are still copied into the snapshot, so the mapping is not retained.
+     *
+     * @param path the file path (must not be {@code null})
+     * @return the snapshot (not {@code null})
+     * @throws IOException if the read failed or the file does not contain a valid snapshot
+     */
+    public static ChainSnapshot read(Path path) throws IOException {
+        Assert.checkNotNullParam("path", path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readFrom(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a snapshot from the given buffer. The buffer's position is advanced past the snapshot.
+     *
+     * @param buf the buffer (must not be {@code null})
+     * @return the snapshot (not {@code null})
+     * @throws IOException if the buffer does not contain a valid snapshot
+     */
+    public static ChainSnapshot readFrom(ByteBuffer buf) throws IOException {
+        Assert.checkNotNullParam("buf", buf);
+        require(buf, 8);
+        if (buf.getInt() != MAGIC) {
+            throw log.invalidSnapshot();
+        }
+        final int version = buf.getInt();
+        if (version != VERSION) {
+            throw log.unsupportedSnapshotVersion(version);
+        }
+        require(buf, FINGERPRINT_SIZE + 12);
+        final byte[] fingerprint = new byte[FINGERPRINT_SIZE];
+        buf.get(fingerprint);
+        final int stepCount = buf.getInt();
+        final int includedCount = buf.getInt();
+        final int edgeCount = buf.getInt();
+        if (stepCount < 0 || includedCount < 0 || includedCount > stepCount || edgeCount < 0) {
+            throw log.invalidSnapshot();
+        }
+        require(buf, (long) includedCount * 9 + 4 + (long) edgeCount * 4);
+        final int[] included = new int[includedCount];
+        buf.asIntBuffer().get(included);
+        buf.position(buf.position() + includedCount * 4);
+        final byte[] flags = new byte[includedCount];
+        buf.get(flags);
+        final int[] edgeStarts = new int[includedCount + 1];
+        buf.asIntBuffer().get(edgeStarts);
+        buf.position(buf.position() + edgeStarts.length * 4);
+        final int[] edges = new int[edgeCount];
+        buf.asIntBuffer().get(edges);
+        buf.position(buf.position() + edgeCount * 4);
+        // validate the structure so that a damaged snapshot cannot cause a malformed chain
+        int last = -1;
+        for (int index : included) {
+            if (index <= last || index >= stepCount) {
+                throw log.invalidSnapshot();
+            }
+            last = index;
+        }
+        if (edgeStarts[0] != 0 || edgeStarts[includedCount] != edgeCount) {
+            throw log.invalidSnapshot();
+        }
+        for (int i = 0; i < includedCount; i++) {
+            if (edgeStarts[i] > edgeStarts[i + 1]) {
+                throw log.invalidSnapshot();
+            }
+        }
+        for (int edge : edges) {
+            if (edge < 0 || edge >= includedCount) {
+                throw log.invalidSnapshot();
+            }
+        }
+        return new ChainSnapshot(fingerprint, stepCount, included, flags, edgeStarts, edges);
+    }
+
+    private static void require(ByteBuffer buf, long size) throws IOException {
+        if (buf.remaining() < size) {
+            throw log.invalidSnapshot();
+        }
+    }
+
+    /**
+     * Compute the fingerprint of the given chain builder, which covers everything that the wiring of a chain depends on.
+     */
+    static byte[] fingerprint(final ChainBuilder chainBuilder) {
+        return fingerprint(new ArrayList<>(chainBuilder.steps), chainBuilder.initialIds, chainBuilder.finalIds);
+    }
+
+    /**
+     * Compute the fingerprint of the given steps, which covers everything that the wiring of a chain depends on.
+     */
+    static byte[] fingerprint(final List<StepBuilder> steps, final Set<ItemId> initialIds, final Set<ItemId> finalIds) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder b = new StringBuilder();
+        for (StepBuilder step : steps) {
+            b.append(step.isLazy() ? "lazy" : "step").append('\n');
+            // consume and produce maps are hashed by identity, so they must be sorted
+            appendSorted(b, step.getConsumes().values().stream()
+                    .map(c -> "consumes " + c.itemId() + ' ' + c.constraint() + ' ' + c.flags().bits));
+            appendSorted(b, step.getProduces().values().stream()
+                    .map(p -> "produces " + p.itemId() + ' ' + p.constraint() + ' ' + p.flags().bits));
+            digest.update(b.toString().getBytes(StandardCharsets.UTF_8));
+            b.setLength(0);
+        }
+        appendSorted(b, initialIds.stream().map(id -> "initial " + id));
+        appendSorted(b, finalIds.stream().map(id -> "final " + id));
+        digest.update(b.toString().getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    private static void appendSorted(StringBuilder b, Stream<String> lines) {
+        lines.sorted().forEachOrdered(line -> b.append(line).append('\n'));
+    }
+}
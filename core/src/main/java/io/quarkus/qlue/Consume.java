@@ -11,12 +11,20 @@ record Consume(StepBuilder stepBuilder, ItemId itemId, Constraint constraint, Co
         final Constraint outputConstraint = constraint == Constraint.REAL || this.constraint == Constraint.REAL
                 ? Constraint.REAL
                 : Constraint.ORDER_ONLY;
-        final ConsumeFlags outputFlags = !flags.contains(ConsumeFlag.OPTIONAL) || !this.flags.contains(ConsumeFlag.OPTIONAL)
-                ? flags.with(this.flags).without(ConsumeFlag.OPTIONAL)
-                : flags.with(this.flags);
+        ConsumeFlags outputFlags = flags.with(this.flags);
+        if (!flags.contains(ConsumeFlag.OPTIONAL) || !this.flags.contains(ConsumeFlag.OPTIONAL)) {
+            outputFlags = outputFlags.without(ConsumeFlag.OPTIONAL);
+        }
+        if (!flags.contains(ConsumeFlag.STREAMED) || !this.flags.contains(ConsumeFlag.STREAMED)) {
+            outputFlags = outputFlags.without(ConsumeFlag.STREAMED);
+        }
         return new Consume(stepBuilder, itemId, outputConstraint, outputFlags);
     }
 
+    boolean isStreamed() {
+        return flags.contains(ConsumeFlag.STREAMED);
+    }
+
     StepId stepId() {
         return stepBuilder.id();
     }
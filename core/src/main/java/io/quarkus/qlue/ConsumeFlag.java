@@ -0,0 +1,16 @@
+package io.quarkus.qlue;
+
+/**
+ */
+public enum ConsumeFlag {
+    /**
+     * Do not exclude the step even if the given resource is not produced by any other step.
+     */
+    OPTIONAL,
+    /**
+     * Consume multi items as they are produced, rather than waiting for every producer to complete before the step
+     * is started. The step does not complete until every producer of the item has completed.
+     */
+    STREAMED,
+    ;
+}
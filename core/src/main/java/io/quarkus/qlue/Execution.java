@@ -0,0 +1,249 @@
+package io.quarkus.qlue;
+
+import static io.quarkus.qlue._private.Messages.log;
+import static java.util.concurrent.locks.LockSupport.park;
+import static java.util.concurrent.locks.LockSupport.unpark;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import io.quarkus.qlue.item.Item;
+
+/**
+ */
+final class Execution {
+
+    private final Clock clock;
+    private final Chain chain;
+    private final ConcurrentHashMap<ItemId, Item> singles;
+    private final ConcurrentHashMap<ItemId, List<Item>> multis;
+    private final ConcurrentHashMap<ItemId, AtomicInteger> remainingConsumers;
+    private final ConcurrentHashMap<ItemId, ItemStream> streams;
+    private final ConcurrentHashMap<ItemId, MultiIndex<?, ?>> indexes = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<StepContext> contexts;
+    private final ConcurrentHashMap<Object, ChainBuilder.OnceSupplier<Object>> stepClassInstances = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<StepId, StepSummary> summaries = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final List<Throwable> problems = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean errorReported = new AtomicBoolean();
+    private final AtomicInteger lastStepCount = new AtomicInteger();
+    private volatile Thread runningThread;
+    private volatile boolean done;
+
+    Execution(final ExecutionBuilder builder, final Executor executor) {
+        chain = builder.chain();
+        clock = builder.clock();
+        this.singles = new ConcurrentHashMap<>(builder.initialSingle());
+        this.multis = new ConcurrentHashMap<>(builder.initialMulti());
+        this.executor = executor;
+        contexts = new AtomicReferenceArray<>(chain.stepCount());
+        final Map<ItemId, Integer> streamProducerCounts = chain.getStreamProducerCounts();
+        if (streamProducerCounts.isEmpty()) {
+            streams = null;
+        } else {
+            streams = new ConcurrentHashMap<>(streamProducerCounts.size());
+            for (Map.Entry<ItemId, Integer> entry : streamProducerCounts.entrySet()) {
+                ItemId itemId = entry.getKey();
+                List<Item> initialItems = multis.getOrDefault(itemId, List.of());
+                streams.put(itemId, new ItemStream(itemId, entry.getValue().intValue(), initialItems));
+            }
+        }
+        if (builder.releaseIntermediates()) {
+            remainingConsumers = new ConcurrentHashMap<>();
+            for (Map.Entry<ItemId, Integer> entry : chain.getConsumerCounts().entrySet()) {
+                ItemId itemId = entry.getKey();
+                if (!chain.hasFinal(itemId) && !chain.hasInitial(itemId)) {
+                    remainingConsumers.put(itemId, new AtomicInteger(entry.getValue().intValue()));
+                }
+            }
+        } else {
+            remainingConsumers = null;
+        }
+        lastStepCount.set(builder.chain().getEndStepCount());
+        if (lastStepCount.get() == 0)
+            done = true;
+    }
+
+    List<Throwable> getProblems() {
+        return problems;
+    }
+
+    StepContext getStepContext(StepInfo stepInfo) {
+        final int index = stepInfo.index();
+        StepContext stepContext = contexts.get(index);
+        if (stepContext == null) {
+            final StepContext newContext = new StepContext(chain.getClassLoader(), stepInfo, this);
+            stepContext = contexts.compareAndExchange(index, null, newContext);
+            if (stepContext == null) {
+                stepContext = newContext;
+            }
+        }
+        return stepContext;
+    }
+
+    void removeStepContext(StepInfo stepInfo, StepContext stepContext) {
+        if (!stepInfo.isLazy()) {
+            // lazy contexts are retained so that later consumers do not run the step again
+            contexts.compareAndSet(stepInfo.index(), stepContext, null);
+        }
+        summaries.put(stepInfo.id(), stepContext.summary());
+    }
+
+    Chain chain() {
+        return chain;
+    }
+
+    Result run() {
+        Clock clock = this.clock;
+        final Instant start = clock.instant();
+        runningThread = Thread.currentThread();
+        // run the operation
+        final List<StepInfo> startSteps = chain.getStartSteps();
+        for (StepInfo startStep : startSteps) {
+            executor.execute(getStepContext(startStep)::run);
+        }
+        // wait for the wrap-up
+        boolean intr = false;
+        try {
+            for (;;) {
+                if (Thread.interrupted()) {
+                    intr = true;
+                }
+                if (done) {
+                    break;
+                }
+                park(this);
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+            runningThread = null;
+        }
+        final Instant end = clock.instant();
+        if (errorReported.get()) {
+            synchronized (problems) {
+                return new Failure(chain, start, end, new ArrayList<>(problems), summaries);
+            }
+        }
+        if (lastStepCount.get() > 0) {
+            throw new IllegalStateException("Extra steps left over");
+        }
+        if (remainingConsumers != null) {
+            // only the final items are retained
+            retainFinal(singles);
+            retainFinal(multis);
+        }
+        return new Success(chain, start, end, singles, multis, summaries);
+    }
+
+    void releaseConsumed(StepInfo stepInfo) {
+        final ConcurrentHashMap<ItemId, AtomicInteger> remainingConsumers = this.remainingConsumers;
+        if (remainingConsumers != null) {
+            for (ItemId itemId : stepInfo.consumes()) {
+                AtomicInteger remaining = remainingConsumers.get(itemId);
+                if (remaining != null && remaining.decrementAndGet() == 0) {
+                    if (itemId.isMulti()) {
+                        if (streams != null) {
+                            streams.remove(itemId);
+                        }
+                        indexes.remove(itemId);
+                        multis.remove(itemId);
+                    } else {
+                        singles.remove(itemId);
+                    }
+                }
+            }
+        }
+    }
+
+    Object stepClassInstance(Object key, StepContext stepContext, Function<StepContext, Object> construct) {
+        // construction happens exactly once per execution, outside of the map, and a failed construction yields null
+        // for every step which needs the instance
+        return stepClassInstances.computeIfAbsent(key, k -> new ChainBuilder.OnceSupplier<>(() -> construct.apply(stepContext)))
+                .get();
+    }
+
+    void demand(ItemId itemId) {
+        final Chain chain = this.chain;
+        if (chain.hasLazyProducers()) {
+            for (StepInfo producer : chain.getLazyProducers(itemId)) {
+                getStepContext(producer).runLazy();
+            }
+        }
+    }
+
+    MultiIndex<?, ?> getIndex(ItemId itemId) {
+        // indexes are only consumed by steps which wait for every producer, so the items cannot change after this
+        // point
+        return indexes.computeIfAbsent(itemId, id -> new MultiIndex<>(multis.getOrDefault(id, List.of())));
+    }
+
+    ItemStream getStream(ItemId itemId) {
+        final ConcurrentHashMap<ItemId, ItemStream> streams = this.streams;
+        return streams == null ? null : streams.get(itemId);
+    }
+
+    void producerFinished(StepInfo stepInfo) {
+        final ConcurrentHashMap<ItemId, ItemStream> streams = this.streams;
+        if (streams != null) {
+            for (ItemId itemId : stepInfo.produces()) {
+                ItemStream stream = streams.get(itemId);
+                if (stream != null) {
+                    stream.producerFinished();
+                }
+            }
+        }
+    }
+
+    private void retainFinal(ConcurrentHashMap<ItemId, ?> items) {
+        items.keySet().removeIf(itemId -> !chain.hasFinal(itemId));
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    void setErrorReported() {
+        errorReported.compareAndSet(false, true);
+    }
+
+    boolean isErrorReported() {
+        return errorReported.get();
+    }
+
+    ConcurrentHashMap<ItemId, Item> getSingles() {
+        return singles;
+    }
+
+    ConcurrentHashMap<ItemId, List<Item>> getMultis() {
+        return multis;
+    }
+
+    Chain getBuildChain() {
+        return chain;
+    }
+
+    void depFinished() {
+        final int count = lastStepCount.decrementAndGet();
+        log.stepCompleted(count);
+        if (count == 0) {
+            done = true;
+            unpark(runningThread);
+        }
+    }
+
+    Clock clock() {
+        return clock;
+    }
+}
@@ -24,6 +24,7 @@ public final class ExecutionBuilder {
     private final Chain chain;
     private final Map<ItemId, Item> initialSingle;
     private final Map<ItemId, ArrayList<Item>> initialMulti;
+    private boolean releaseIntermediates;
 
     ExecutionBuilder(final Chain chain) {
         this.chain = chain;
@@ -93,6 +94,21 @@ public final class ExecutionBuilder {
         return this;
     }
 
+    /**
+     * Establish whether intermediate items should be released as soon as the last step which consumes them has
+     * completed. When enabled, only final items are retained in the {@link Success} result. Released items are
+     * only dereferenced, and are not closed, even by {@link Success#closeAll()}. An item which is consumed by a
+     * lazy step is not released until the execution completes, because the lazy step might still be run.
+     * By default, all items are retained until the execution completes.
+     *
+     * @param releaseIntermediates {@code true} to release intermediate items early, or {@code false} to retain them
+     * @return this builder
+     */
+    public ExecutionBuilder setReleaseIntermediates(boolean releaseIntermediates) {
+        this.releaseIntermediates = releaseIntermediates;
+        return this;
+    }
+
     /**
      * Run the execution. The chain may run in one or many threads.
      *
@@ -142,4 +158,8 @@ public final class ExecutionBuilder {
     Clock clock() {
         return clock;
     }
+
+    boolean releaseIntermediates() {
+        return releaseIntermediates;
+    }
 }
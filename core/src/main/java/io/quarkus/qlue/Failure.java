@@ -10,8 +10,9 @@ import java.util.Map;
 public class Failure extends Result {
     private final List<Throwable> problems;
 
-    Failure(final Instant start, final Instant end, final List<Throwable> problems, final Map<StepId, StepSummary> summaries) {
-        super(start, end, summaries);
+    Failure(final Chain chain, final Instant start, final Instant end, final List<Throwable> problems,
+            final Map<StepId, StepSummary> summaries) {
+        super(chain, start, end, summaries);
         this.problems = List.copyOf(problems);
     }
 
@@ -1,5 +1,7 @@
 package io.quarkus.qlue;
 
+import static io.quarkus.qlue.ReflectUtil.isSupplierOf;
+import static io.quarkus.qlue.ReflectUtil.isSupplierOfOptionalOf;
 import static io.quarkus.qlue.ReflectUtil.rawTypeOf;
 import static io.quarkus.qlue.ReflectUtil.rawTypeOfParameter;
 import static io.quarkus.qlue.ReflectUtil.typeOfParameter;
@@ -9,24 +11,26 @@ import static java.lang.invoke.MethodHandles.Lookup;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.lang.reflect.Type;
-import java.lang.reflect.UndeclaredThrowableException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Flow;
 import java.util.function.BiConsumer;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import io.quarkus.qlue.annotation.AfterProduce;
 import io.quarkus.qlue.annotation.AlwaysProduce;
 import io.quarkus.qlue.annotation.BeforeConsume;
 import io.quarkus.qlue.annotation.BeforeConsumeWeak;
 import io.quarkus.qlue.annotation.ForClass;
+import io.quarkus.qlue.annotation.Lazy;
 import io.quarkus.qlue.annotation.None;
 import io.quarkus.qlue.annotation.Overridable;
 import io.quarkus.qlue.annotation.Step;
@@ -35,6 +39,7 @@ import io.quarkus.qlue.item.ClassItem;
 import io.quarkus.qlue.item.EmptyClassItem;
 import io.quarkus.qlue.item.EmptyItem;
 import io.quarkus.qlue.item.Item;
+import io.quarkus.qlue.item.KeyedItem;
 import io.quarkus.qlue.item.MultiClassItem;
 import io.quarkus.qlue.item.MultiItem;
 import io.quarkus.qlue.item.SimpleClassItem;
@@ -127,11 +132,28 @@ public interface InjectionMapper {
      */
     boolean isStepMethod(Method method, final Lookup lookup);
 
+    /**
+     * Determine whether a method is a step method. Methods which are not step methods are skipped over.
+     * Implementations should evaluate any conditions using {@link ChainBuilder#evaluateCondition(Class)}, so that
+     * each condition is evaluated at most once per chain builder. The default implementation delegates to
+     * {@link #isStepMethod(Method, Lookup)}.
+     *
+     * @param chainBuilder the chain builder which the step is being added to (not {@code null})
+     * @param method the method (not {@code null})
+     * @param lookup the {@link Lookup} to use
+     * @return {@code true} if the method is a step method, or {@code false} otherwise
+     */
+    default boolean isStepMethod(ChainBuilder chainBuilder, Method method, final Lookup lookup) {
+        return isStepMethod(method, lookup);
+    }
+
     /**
      * An injection mapper that uses the standard annotation set in {@link io.quarkus.qlue.annotation} to identify
      * and wire injections. Method parameters may be item types, {@code Optional} or {@code List} of item types,
-     * {@code Consumer} of item types, or {@link StepContext}. Fields may be item types or {@code Optional} or {@code List}
-     * of item types.
+     * {@link MultiIndex} of keyed multi item types, {@code Supplier} of any of those (deferring consumption until the
+     * supplier is called), {@code Consumer} of item types, {@code Flow.Publisher} of multi item types, or
+     * {@link StepContext}. Fields may be item types or {@code Optional}, {@code List}, or {@code MultiIndex} of item
+     * types.
      */
     InjectionMapper BASIC = new InjectionMapper() {
         public Consumer<StepContext> handleClass(final StepBuilder stepBuilder, final Class<?> clazz, final Lookup lookup)
@@ -203,6 +225,9 @@ public interface InjectionMapper {
                     throw log.cannotConsume(classArg);
                 }
             }
+            if (method.getAnnotation(Lazy.class) != null) {
+                stepBuilder.lazy();
+            }
             return sc -> {
             };
         }
@@ -270,52 +295,26 @@ public interface InjectionMapper {
         }
 
         public boolean isStepMethod(final Method method, final Lookup lookup) {
+            return isStepMethod(method, ReflectUtil::evaluateCondition);
+        }
+
+        public boolean isStepMethod(final ChainBuilder chainBuilder, final Method method, final Lookup lookup) {
+            return isStepMethod(method, chainBuilder::evaluateCondition);
+        }
+
+        private boolean isStepMethod(final Method method, final Predicate<Class<? extends BooleanSupplier>> evaluator) {
             Step step = method.getAnnotation(Step.class);
             if (step == null) {
                 return false;
             }
-            Class<? extends BooleanSupplier>[] when = step.when();
-            for (Class<? extends BooleanSupplier> clazz : when) {
-                try {
-                    if (!clazz.getConstructor().newInstance().getAsBoolean()) {
-                        return false;
-                    }
-                } catch (InstantiationException e) {
-                    throw ReflectUtil.toError(e);
-                } catch (IllegalAccessException e) {
-                    throw ReflectUtil.toError(e);
-                } catch (InvocationTargetException e) {
-                    try {
-                        throw e.getCause();
-                    } catch (RuntimeException | Error e2) {
-                        throw e2;
-                    } catch (Throwable t) {
-                        throw new UndeclaredThrowableException(t);
-                    }
-                } catch (NoSuchMethodException e) {
-                    throw ReflectUtil.toError(e);
+            for (Class<? extends BooleanSupplier> clazz : step.when()) {
+                if (!evaluator.test(clazz)) {
+                    return false;
                 }
             }
-            Class<? extends BooleanSupplier>[] unless = step.unless();
-            for (Class<? extends BooleanSupplier> clazz : unless) {
-                try {
-                    if (clazz.getConstructor().newInstance().getAsBoolean()) {
-                        return false;
-                    }
-                } catch (InstantiationException e) {
-                    throw ReflectUtil.toError(e);
-                } catch (IllegalAccessException e) {
-                    throw ReflectUtil.toError(e);
-                } catch (InvocationTargetException e) {
-                    try {
-                        throw e.getCause();
-                    } catch (RuntimeException | Error e2) {
-                        throw e2;
-                    } catch (Throwable t) {
-                        throw new UndeclaredThrowableException(t);
-                    }
-                } catch (NoSuchMethodException e) {
-                    throw ReflectUtil.toError(e);
+            for (Class<? extends BooleanSupplier> clazz : step.unless()) {
+                if (evaluator.test(clazz)) {
+                    return false;
                 }
             }
             return true;
@@ -378,6 +377,36 @@ public interface InjectionMapper {
                 }
                 throw log.cannotProduce(argType);
             }
+            if (isSupplierOf(type, Item.class) || isSupplierOfOptionalOf(type, Item.class)
+                    || isSupplierOf(type, List.class) || isSupplierOf(type, MultiIndex.class)) {
+                // we inject a supplier which defers the actual consumption until it is called
+                Function<StepContext, Object> fn = handleNonConsumerInput(stepBuilder, typeOfParameter(type, 0), element);
+                return sc -> (Supplier<Object>) () -> fn.apply(sc);
+            }
+            if (clazz == Flow.Publisher.class) {
+                ForClass forClassAnnotation = element.getAnnotation(ForClass.class);
+                Class<?> classArg = forClassAnnotation == null ? null : forClassAnnotation.value();
+                // we inject a publisher of the streamed items
+                Class<?> argType = rawTypeOfParameter(type, 0);
+                ConsumeFlags flags = ConsumeFlags.of(ConsumeFlag.STREAMED);
+                if (MultiItem.class.isAssignableFrom(argType)) {
+                    if (classArg != null) {
+                        throw log.unnamedMustNotHaveArgument(argType);
+                    }
+                    Class<? extends Item> itemType = argType.asSubclass(Item.class);
+                    stepBuilder.consumes(itemType, flags);
+                    return sc -> sc.consumeStream((Class) itemType);
+                } else if (MultiClassItem.class.isAssignableFrom(argType)) {
+                    if (classArg == null) {
+                        throw log.namedNeedsArgument(argType);
+                    }
+                    Class<? extends ClassItem<?>> itemType = (Class<? extends ClassItem<?>>) argType
+                            .asSubclass(ClassItem.class);
+                    stepBuilder.consumes((Class) itemType, (Class) classArg, flags);
+                    return sc -> sc.consumeStream((Class) itemType, (Class) classArg);
+                }
+                throw log.cannotStream(argType);
+            }
             return handleNonConsumerInput(stepBuilder, type, element);
         }
 
@@ -402,6 +431,11 @@ public interface InjectionMapper {
                 realType = clazz.asSubclass(Item.class);
             } else if (clazz == List.class) {
                 realType = rawTypeOfParameter(typeOfParameter(type, 0), 0).asSubclass(Item.class);
+            } else if (clazz == MultiIndex.class) {
+                realType = rawTypeOfParameter(type, 1).asSubclass(Item.class);
+                if (!KeyedItem.class.isAssignableFrom(realType)) {
+                    throw log.cannotIndex(realType);
+                }
             } else {
                 throw log.cannotConsume(clazz);
             }
@@ -436,6 +470,14 @@ public interface InjectionMapper {
                 } else {
                     throw log.cannotConsume(clazz);
                 }
+            } else if (clazz == MultiIndex.class) {
+                if (MultiItem.class.isAssignableFrom(realType)) {
+                    return sc -> sc.consumeIndex((Class) realType);
+                } else if (MultiClassItem.class.isAssignableFrom(realType)) {
+                    return sc -> sc.consumeIndex((Class) realType, (Class) classArg);
+                } else {
+                    throw log.cannotConsume(clazz);
+                }
             } else if (SimpleItem.class.isAssignableFrom(realType)) {
                 return sc -> sc.consume((Class) realType);
             } else if (SimpleClassItem.class.isAssignableFrom(realType)) {
@@ -486,5 +528,9 @@ public interface InjectionMapper {
         default boolean isStepMethod(Method method, final Lookup lookup) {
             return getDelegate().isStepMethod(method, lookup);
         }
+
+        default boolean isStepMethod(ChainBuilder chainBuilder, Method method, final Lookup lookup) {
+            return getDelegate().isStepMethod(chainBuilder, method, lookup);
+        }
     }
 }
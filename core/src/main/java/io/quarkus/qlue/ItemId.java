@@ -5,6 +5,7 @@ import static io.quarkus.qlue._private.Messages.log;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
+import io.quarkus.qlue.item.ClassItem;
 import io.quarkus.qlue.item.Item;
 import io.quarkus.qlue.item.MultiClassItem;
 import io.quarkus.qlue.item.MultiItem;
@@ -30,6 +31,35 @@ public final class ItemId {
         this.itemArg = null;
     }
 
+    /**
+     * Get the identifier of an item type.
+     *
+     * @param type the item type (must not be {@code null})
+     * @return the item identifier (not {@code null})
+     * @throws IllegalArgumentException if the item type requires an argument
+     */
+    public static ItemId of(Class<? extends Item> type) {
+        Assert.checkNotNullParam("type", type);
+        if (ClassItem.class.isAssignableFrom(type)) {
+            throw log.namedNeedsArgument(type);
+        }
+        return new ItemId(type);
+    }
+
+    /**
+     * Get the identifier of an item type with a class argument.
+     *
+     * @param type the item type (must not be {@code null})
+     * @param argument the item argument (must not be {@code null})
+     * @param <U> the upper bound of the argument type
+     * @return the item identifier (not {@code null})
+     */
+    public static <U> ItemId of(Class<? extends ClassItem<U>> type, Class<? extends U> argument) {
+        Assert.checkNotNullParam("type", type);
+        Assert.checkNotNullParam("argument", argument);
+        return new ItemId(type, argument);
+    }
+
     /**
      * {@return <code>true</code> if the item supports multiplicity}
      */
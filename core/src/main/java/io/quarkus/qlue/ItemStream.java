@@ -0,0 +1,184 @@
+package io.quarkus.qlue;
+
+import static io.quarkus.qlue._private.Messages.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.quarkus.qlue.item.Item;
+
+/**
+ * The stream of multi items of a single identifier, which is completed once every producer of the item has finished.
+ * Items are retained in production order so that late subscribers observe every item.
+ */
+final class ItemStream {
+    private final ItemId itemId;
+    private final ArrayList<Item> items;
+    private final ArrayList<Subscription<?>> subscriptions = new ArrayList<>();
+    private int remainingProducers;
+
+    ItemStream(final ItemId itemId, final int producerCount, final List<Item> initialItems) {
+        this.itemId = itemId;
+        this.items = new ArrayList<>(initialItems);
+        this.remainingProducers = producerCount;
+    }
+
+    void add(Item item) {
+        final Subscription<?>[] toSignal;
+        synchronized (this) {
+            items.add(item);
+            toSignal = subscriptions.toArray(Subscription<?>[]::new);
+        }
+        for (Subscription<?> subscription : toSignal) {
+            subscription.signal();
+        }
+    }
+
+    void producerFinished() {
+        final Subscription<?>[] toSignal;
+        synchronized (this) {
+            if (--remainingProducers != 0) {
+                return;
+            }
+            toSignal = subscriptions.toArray(Subscription<?>[]::new);
+        }
+        for (Subscription<?> subscription : toSignal) {
+            subscription.signal();
+        }
+    }
+
+    <T> Flow.Publisher<T> publisherFor(StepContext stepContext) {
+        return subscriber -> subscribe(stepContext, subscriber);
+    }
+
+    private <T> void subscribe(final StepContext stepContext, final Flow.Subscriber<? super T> subscriber) {
+        if (!stepContext.streamStarted()) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(final long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(log.stepNotRunning());
+            return;
+        }
+        final Subscription<T> subscription = new Subscription<>(stepContext, subscriber);
+        try {
+            subscriber.onSubscribe(subscription);
+        } catch (Throwable t) {
+            subscription.fail(t);
+            return;
+        }
+        synchronized (this) {
+            subscriptions.add(subscription);
+        }
+        subscription.signal();
+    }
+
+    private synchronized int size() {
+        return items.size();
+    }
+
+    private synchronized Item get(int index) {
+        return items.get(index);
+    }
+
+    private synchronized boolean isComplete(int delivered) {
+        return remainingProducers <= 0 && delivered == items.size();
+    }
+
+    private synchronized void remove(Subscription<?> subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    final class Subscription<T> implements Flow.Subscription, Runnable {
+        private final StepContext stepContext;
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        // only accessed by the draining thread
+        private int delivered;
+        private volatile boolean done;
+
+        Subscription(final StepContext stepContext, final Flow.Subscriber<? super T> subscriber) {
+            this.stepContext = stepContext;
+            this.subscriber = subscriber;
+        }
+
+        public void request(final long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Non-positive subscription request: " + n));
+                return;
+            }
+            demand.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            signal();
+        }
+
+        public void cancel() {
+            finish();
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0) {
+                stepContext.getExecutor().execute(this);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public void run() {
+            int missed = 1;
+            for (;;) {
+                if (done) {
+                    return;
+                }
+                try {
+                    while (demand.get() > 0 && delivered < size()) {
+                        final Item item = get(delivered++);
+                        demand.decrementAndGet();
+                        subscriber.onNext((T) item);
+                        if (done) {
+                            return;
+                        }
+                    }
+                    if (isComplete(delivered)) {
+                        subscriber.onComplete();
+                        finish();
+                        return;
+                    }
+                } catch (Throwable t) {
+                    fail(t);
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        void fail(Throwable t) {
+            if (!done) {
+                log.subscriberFailed(itemId, t);
+                stepContext.addProblem(t);
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (!done) {
+                synchronized (this) {
+                    if (done) {
+                        return;
+                    }
+                    done = true;
+                }
+                remove(this);
+                stepContext.streamFinished();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.quarkus.qlue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.quarkus.qlue.item.Item;
+import io.quarkus.qlue.item.KeyedItem;
+
+/**
+ * An immutable index of the values produced for a {@linkplain KeyedItem keyed} multi item. More than one item may
+ * share a key; the items of each key, like the values of the whole index, are retained in the order that they would be
+ * returned from {@link StepContext#consumeMulti(Class)}.
+ *
+ * @param <K> the key type
+ * @param <T> the item type
+ */
+public final class MultiIndex<K, T> {
+    private final Map<K, List<T>> index;
+    private final List<T> values;
+
+    @SuppressWarnings("unchecked")
+    MultiIndex(final List<Item> items) {
+        final List<T> values = new ArrayList<>(items.size());
+        final Map<K, List<T>> index = new HashMap<>();
+        for (Item item : items) {
+            final T value = (T) item;
+            values.add(value);
+            index.computeIfAbsent(((KeyedItem<K>) item).key(), MultiIndex::newList).add(value);
+        }
+        for (Map.Entry<K, List<T>> entry : index.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        this.values = Collections.unmodifiableList(values);
+        this.index = index;
+    }
+
+    private static <T> List<T> newList(Object ignored) {
+        return new ArrayList<>(1);
+    }
+
+    /**
+     * Get the items with the given key.
+     *
+     * @param key the key (may be {@code null})
+     * @return the items with the key (may be empty, will not be {@code null})
+     */
+    public List<T> get(K key) {
+        return index.getOrDefault(key, List.of());
+    }
+
+    /**
+     * Determine whether any item has the given key.
+     *
+     * @param key the key (may be {@code null})
+     * @return {@code true} if at least one item has the key, or {@code false} otherwise
+     */
+    public boolean containsKey(K key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * {@return the set of distinct keys of the indexed items}
+     */
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * {@return all of the indexed items}
+     */
+    public List<T> values() {
+        return values;
+    }
+
+    /**
+     * {@return the number of indexed items}
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * {@return {@code true} if no items were indexed}
+     */
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+}
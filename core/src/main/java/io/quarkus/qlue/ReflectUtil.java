@@ -3,13 +3,16 @@ package io.quarkus.qlue;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Array;
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
 import java.lang.reflect.Parameter;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -101,6 +104,32 @@ final class ReflectUtil {
         return rawTypeOf(typeOfParameter(type, paramIdx));
     }
 
+    /**
+     * Instantiate and evaluate the given condition class.
+     *
+     * @param clazz the condition class (must not be {@code null})
+     * @return the result of the condition
+     */
+    public static boolean evaluateCondition(final Class<? extends BooleanSupplier> clazz) {
+        try {
+            return clazz.getConstructor().newInstance().getAsBoolean();
+        } catch (InstantiationException e) {
+            throw toError(e);
+        } catch (IllegalAccessException e) {
+            throw toError(e);
+        } catch (InvocationTargetException e) {
+            try {
+                throw e.getCause();
+            } catch (RuntimeException | Error e2) {
+                throw e2;
+            } catch (Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        } catch (NoSuchMethodException e) {
+            throw toError(e);
+        }
+    }
+
     public static InstantiationError toError(final InstantiationException e) {
         final InstantiationError error = new InstantiationError(e.getMessage());
         error.setStackTrace(e.getStackTrace());
@@ -0,0 +1,197 @@
+package io.quarkus.qlue;
+
+import static io.quarkus.qlue._private.Messages.log;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.smallrye.common.constraint.Assert;
+
+/**
+ * The result of the execution.
+ */
+public abstract class Result {
+    private final Chain chain;
+    private final Instant start;
+    private final Instant end;
+    private final Map<StepId, StepSummary> summaries;
+    private Duration duration;
+    private List<StepId> criticalPath;
+    private Map<StepId, Duration> slacks;
+
+    Result(final Chain chain, final Instant start, final Instant end, final Map<StepId, StepSummary> summaries) {
+        this.chain = chain;
+        this.start = start;
+        this.end = end;
+        this.summaries = Map.copyOf(summaries);
+    }
+
+    /**
+     * {@return the start time of the execution}
+     */
+    public Instant start() {
+        return start;
+    }
+
+    /**
+     * {@return the end time of the execution}
+     */
+    public Instant end() {
+        return end;
+    }
+
+    /**
+     * {@return the amount of elapsed time from the time the operation was initiated to the time it was completed}
+     */
+    public Duration duration() {
+        Duration duration = this.duration;
+        if (duration == null) {
+            duration = this.duration = Duration.between(start, end);
+        }
+        return duration;
+    }
+
+    public boolean isSuccess() {
+        return false;
+    }
+
+    public Success asSuccess() {
+        throw log.didNotSucceed();
+    }
+
+    public boolean isFailure() {
+        return false;
+    }
+
+    public Failure asFailure() {
+        throw log.didNotFail();
+    }
+
+    /**
+     * {@return the set of steps which were executed in this execution}
+     */
+    public Set<StepId> executedSteps() {
+        return summaries.keySet();
+    }
+
+    /**
+     * {@return the step summary for the given step ID}
+     *
+     * @param stepId the step ID (must not be {@code null})
+     */
+    public StepSummary stepSummary(StepId stepId) {
+        StepSummary summary = summaries.get(Assert.checkNotNullParam("stepId", stepId));
+        if (summary == null) {
+            throw log.noSuchStep(stepId);
+        }
+        return summary;
+    }
+
+    /**
+     * Get the critical path of the execution, which is the sequence of executed steps that determined its duration.
+     * The path ends with the step which completed last, and each step before it is the dependency that the following
+     * step was the last to wait for. Speeding up any other step cannot make the execution complete any sooner.
+     *
+     * @return the steps of the critical path, in order of execution (not {@code null})
+     */
+    public List<StepId> criticalPath() {
+        List<StepId> criticalPath = this.criticalPath;
+        if (criticalPath == null) {
+            criticalPath = this.criticalPath = computeCriticalPath();
+        }
+        return criticalPath;
+    }
+
+    private List<StepId> computeCriticalPath() {
+        StepSummary current = null;
+        for (StepSummary summary : summaries.values()) {
+            if (current == null || summary.end().isAfter(current.end())) {
+                current = summary;
+            }
+        }
+        final ArrayDeque<StepId> path = new ArrayDeque<>();
+        while (current != null) {
+            path.addFirst(current.stepId());
+            final StepInfo stepInfo = chain.stepInfo(current.stepId());
+            final StepGraph graph = stepInfo.graph();
+            // the step was released by whichever of its dependencies completed last
+            StepSummary next = null;
+            for (int i = 0; i < graph.dependencyCount(stepInfo.index()); i++) {
+                final StepSummary summary = summaries.get(graph.step(graph.dependency(stepInfo.index(), i)).id());
+                if (summary != null && (next == null || summary.end().isAfter(next.end()))) {
+                    next = summary;
+                }
+            }
+            current = next;
+        }
+        return List.copyOf(path);
+    }
+
+    /**
+     * Get the slack of an executed step, which is how much later the step could have completed without delaying the
+     * completion of the execution, given how long each of the steps after it took. The steps on the
+     * {@linkplain #criticalPath() critical path} have little or no slack, other than the time that the steps after
+     * them spent waiting for a thread. Lazy steps are not scheduled, so their slack is only measured against the
+     * completion of the execution.
+     *
+     * @param stepId the step ID (must not be {@code null})
+     * @return the slack of the step (not {@code null})
+     */
+    public Duration slack(StepId stepId) {
+        Assert.checkNotNullParam("stepId", stepId);
+        Map<StepId, Duration> slacks = this.slacks;
+        if (slacks == null) {
+            slacks = this.slacks = computeSlacks();
+        }
+        final Duration slack = slacks.get(stepId);
+        if (slack == null) {
+            throw log.noSuchStep(stepId);
+        }
+        return slack;
+    }
+
+    private Map<StepId, Duration> computeSlacks() {
+        if (summaries.isEmpty()) {
+            return Map.of();
+        }
+        Instant finish = start;
+        for (StepSummary summary : summaries.values()) {
+            if (summary.end().isAfter(finish)) {
+                finish = summary.end();
+            }
+        }
+        // visit the dependents of each step first, to find the latest time that each step could have completed
+        final StepGraph graph = chain.stepInfo(summaries.keySet().iterator().next()).graph();
+        final Instant[] latestFinishes = new Instant[graph.stepCount()];
+        final int[] order = graph.order();
+        for (int k = order.length - 1; k >= 0; k--) {
+            final int step = order[k];
+            if (summaries.containsKey(graph.step(step).id())) {
+                Instant latestFinish = finish;
+                for (int i = 0; i < graph.dependentCount(step); i++) {
+                    final StepInfo dependent = graph.dependent(step, i);
+                    final Instant dependentFinish = latestFinishes[dependent.index()];
+                    if (dependentFinish != null) {
+                        final Instant latestStart = dependentFinish.minus(summaries.get(dependent.id()).duration());
+                        if (latestStart.isBefore(latestFinish)) {
+                            latestFinish = latestStart;
+                        }
+                    }
+                }
+                latestFinishes[step] = latestFinish;
+            }
+        }
+        final Map<StepId, Duration> slacks = new HashMap<>(summaries.size());
+        for (StepSummary summary : summaries.values()) {
+            final Instant latestFinish = latestFinishes[chain.stepInfo(summary.stepId()).index()];
+            final Duration slack = Duration.between(summary.end(), latestFinish == null ? finish : latestFinish);
+            slacks.put(summary.stepId(), slack.isNegative() ? Duration.ZERO : slack);
+        }
+        return Map.copyOf(slacks);
+    }
+}
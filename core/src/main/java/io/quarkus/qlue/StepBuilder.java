@@ -18,7 +18,7 @@ import io.smallrye.common.constraint.Assert;
  * a destructor for items it produces, which will be run (in indeterminate order) at the end of processing.
  */
 public final class StepBuilder {
-    private final ChainBuilder chainBuilder;
+    private ChainBuilder chainBuilder;
     private final Consumer<StepContext> step;
     private final Map<ItemId, Consume> consumes = new HashMap<>();
     private final Map<ItemId, Produce> produces = new HashMap<>();
@@ -27,6 +27,7 @@ public final class StepBuilder {
     private AttachmentKey<?> key2;
     private Object val2;
     private StepId id;
+    private boolean lazy;
 
     StepBuilder(final ChainBuilder chainBuilder, final Consumer<StepContext> step) {
         this.chainBuilder = chainBuilder;
@@ -388,6 +389,18 @@ public final class StepBuilder {
         return this;
     }
 
+    /**
+     * Mark this step as lazy. A lazy step is not scheduled with the rest of the chain; instead, it is run
+     * on the thread of the first step which actually consumes one of its items, and not at all if none do.
+     * A lazy step whose items are final, streamed, or only ordered against is run eagerly as usual.
+     *
+     * @return this builder
+     */
+    public StepBuilder lazy() {
+        lazy = true;
+        return this;
+    }
+
     /**
      * Get the chain builder.
      *
@@ -515,12 +528,19 @@ public final class StepBuilder {
 
     // -- //
 
+    void setChainBuilder(final ChainBuilder chainBuilder) {
+        this.chainBuilder = chainBuilder;
+    }
+
     Consumer<StepContext> step() {
         return step;
     }
 
     private void addConsumes(final ItemId itemId, final Constraint constraint, final ConsumeFlags flags) {
         Assert.checkNotNullParam("flags", flags);
+        if (flags.contains(ConsumeFlag.STREAMED) && !itemId.isMulti()) {
+            throw log.cannotStream(itemId);
+        }
         consumes.compute(itemId,
                 (id, c) -> c == null ? new Consume(this, id, constraint, flags) : c.combine(constraint, flags));
     }
@@ -538,6 +558,10 @@ public final class StepBuilder {
         return produces;
     }
 
+    boolean isLazy() {
+        return lazy;
+    }
+
     Set<ItemId> realConsumes() {
         final HashMap<ItemId, Consume> map = new HashMap<>(consumes);
         map.entrySet().removeIf(e -> e.getValue().constraint() == Constraint.ORDER_ONLY);
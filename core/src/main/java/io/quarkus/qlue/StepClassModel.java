@@ -0,0 +1,117 @@
+package io.quarkus.qlue;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * The reflective model of a step class, which is computed once per class and shared by every chain builder.
+ * The members of the class are retained in declaration order as reported by reflection, and the method handles
+ * which are obtained for them are cached by the access rights of the lookup that was used to obtain them.
+ * Handles are only cached for lookups whose classes are defined by the class loader of the step class, so that
+ * the model of a step class never keeps a class of another class loader reachable.
+ * <p>
+ * Only the reflective structure is cached. The interpretation of that structure (such as which methods are step
+ * methods, and which items are consumed and produced) depends on the {@link InjectionMapper} in use, so it is
+ * computed afresh for each chain builder.
+ */
+final class StepClassModel {
+    private static final ClassValue<StepClassModel> MODELS = new ClassValue<>() {
+        protected StepClassModel computeValue(final Class<?> type) {
+            return new StepClassModel(type);
+        }
+    };
+
+    private final ClassLoader classLoader;
+    private final List<Constructor<?>> constructors;
+    private final List<Method> methods;
+    private final List<Field> injectableFields;
+    private final ConcurrentHashMap<LookupKey, ConcurrentHashMap<Member, MethodHandle>> handles = new ConcurrentHashMap<>();
+
+    private StepClassModel(final Class<?> clazz) {
+        classLoader = clazz.getClassLoader();
+        constructors = List.of(clazz.getDeclaredConstructors());
+        methods = List.of(clazz.getDeclaredMethods());
+        injectableFields = Stream.of(clazz.getDeclaredFields())
+                .filter(field -> {
+                    int mods = field.getModifiers();
+                    return !Modifier.isFinal(mods) && !Modifier.isStatic(mods);
+                })
+                .toList();
+    }
+
+    static StepClassModel of(Class<?> clazz) {
+        return MODELS.get(clazz);
+    }
+
+    List<Constructor<?>> constructors() {
+        return constructors;
+    }
+
+    List<Method> methods() {
+        return methods;
+    }
+
+    List<Field> injectableFields() {
+        return injectableFields;
+    }
+
+    MethodHandle unreflect(Lookup lookup, Method method) throws IllegalAccessException {
+        return cached(lookup, method, Lookup::unreflect);
+    }
+
+    MethodHandle unreflectConstructor(Lookup lookup, Constructor<?> constructor) throws IllegalAccessException {
+        return cached(lookup, constructor, Lookup::unreflectConstructor);
+    }
+
+    MethodHandle unreflectSetter(Lookup lookup, Field field) throws IllegalAccessException {
+        return cached(lookup, field, Lookup::unreflectSetter);
+    }
+
+    private <M extends Member> MethodHandle cached(Lookup lookup, M member, Unreflector<M> unreflector)
+            throws IllegalAccessException {
+        if (!isLocal(lookup.lookupClass()) || !isLocal(lookup.previousLookupClass())) {
+            return unreflector.unreflect(lookup, member);
+        }
+        final ConcurrentHashMap<Member, MethodHandle> map = handles.computeIfAbsent(LookupKey.of(lookup),
+                StepClassModel::newMap);
+        MethodHandle handle = map.get(member);
+        if (handle == null) {
+            // access failures are not cached
+            handle = unreflector.unreflect(lookup, member);
+            final MethodHandle appearing = map.putIfAbsent(member, handle);
+            if (appearing != null) {
+                handle = appearing;
+            }
+        }
+        return handle;
+    }
+
+    private boolean isLocal(Class<?> clazz) {
+        return clazz == null || clazz.getClassLoader() == classLoader;
+    }
+
+    private static ConcurrentHashMap<Member, MethodHandle> newMap(Object ignored) {
+        return new ConcurrentHashMap<>();
+    }
+
+    interface Unreflector<M extends Member> {
+        MethodHandle unreflect(Lookup lookup, M member) throws IllegalAccessException;
+    }
+
+    /**
+     * The key of a lookup. Two lookups with the same key have identical access rights.
+     */
+    record LookupKey(Class<?> lookupClass, Class<?> previousLookupClass, int lookupModes) {
+        static LookupKey of(Lookup lookup) {
+            return new LookupKey(lookup.lookupClass(), lookup.previousLookupClass(), lookup.lookupModes());
+        }
+    }
+}
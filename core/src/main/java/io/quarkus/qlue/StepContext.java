@@ -11,13 +11,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import io.quarkus.qlue.item.ClassItem;
 import io.quarkus.qlue.item.Item;
+import io.quarkus.qlue.item.KeyedItem;
 import io.quarkus.qlue.item.MultiClassItem;
 import io.quarkus.qlue.item.MultiItem;
 import io.quarkus.qlue.item.SimpleClassItem;
@@ -32,13 +36,21 @@ import io.smallrye.common.constraint.Assert;
 public final class StepContext {
     private static final VarHandle stateHandle = ConstantBootstraps.fieldVarHandle(lookup(), "state", VarHandle.class,
             StepContext.class, State.class);
+    private static final VarHandle pendingHandle = ConstantBootstraps.fieldVarHandle(lookup(), "pending", VarHandle.class,
+            StepContext.class, int.class);
 
     private final ClassLoader classLoader;
     private final StepInfo stepInfo;
     private final Execution execution;
     private final AtomicInteger dependencies;
+    // only present for lazy steps, which may be demanded by more than one consumer
+    private final AtomicBoolean demanded;
+    private final CountDownLatch lazyDone;
     @SuppressWarnings({ "unused", "FieldMayBeFinal" }) // stateHandle
     private volatile State state = State.WAITING;
+    // the step body plus any open item streams
+    @SuppressWarnings({ "unused", "FieldMayBeFinal" }) // pendingHandle
+    private volatile int pending = 1;
     private volatile Instant start;
     private volatile Instant end;
     private volatile Duration duration;
@@ -52,6 +64,13 @@ public final class StepContext {
         this.stepInfo = stepInfo;
         this.execution = execution;
         dependencies = new AtomicInteger(stepInfo.dependencyCount());
+        if (stepInfo.isLazy()) {
+            demanded = new AtomicBoolean();
+            lazyDone = new CountDownLatch(1);
+        } else {
+            demanded = null;
+            lazyDone = null;
+        }
     }
 
     /**
@@ -184,6 +203,7 @@ public final class StepContext {
         if (!stepInfo.consumes().contains(id)) {
             throw log.undeclaredItem(id);
         }
+        execution.demand(id);
         return type.cast(execution.getSingles().get(id));
     }
 
@@ -212,6 +232,7 @@ public final class StepContext {
         if (!stepInfo.consumes().contains(id)) {
             throw log.undeclaredItem(id);
         }
+        execution.demand(id);
         return type.cast(execution.getSingles().get(id));
     }
 
@@ -243,6 +264,7 @@ public final class StepContext {
         if (!stepInfo.consumes().contains(id)) {
             throw log.undeclaredItem(id);
         }
+        execution.demand(id);
         return new ArrayList<>((List<T>) (List) execution.getMultis().getOrDefault(id, Collections.emptyList()));
     }
 
@@ -274,6 +296,7 @@ public final class StepContext {
         if (!stepInfo.consumes().contains(id)) {
             throw log.undeclaredItem(id);
         }
+        execution.demand(id);
         return new ArrayList<>((List<T>) (List) execution.getMultis().getOrDefault(id, Collections.emptyList()));
     }
 
@@ -314,6 +337,87 @@ public final class StepContext {
         return result;
     }
 
+    /**
+     * Consume all of the values produced for the named keyed item as an index. The index is built once per
+     * execution and is shared between all consuming steps.
+     *
+     * @param type the item element type (must not be {@code null})
+     * @param <K> the key type
+     * @param <T> the item type
+     * @return the index of the produced items (not {@code null})
+     * @throws IllegalArgumentException if this step was not declared to consume {@code type}, or if {@code type} is
+     *         {@code null} or is not a {@link KeyedItem}, or if {@code type} is consumed as a stream
+     */
+    public <K, T extends MultiItem & KeyedItem<K>> MultiIndex<K, T> consumeIndex(Class<T> type) {
+        Assert.checkNotNullParam("type", type);
+        if (ClassItem.class.isAssignableFrom(type)) {
+            throw log.namedNeedsArgument(type);
+        }
+        return doConsumeIndex(new ItemId(type));
+    }
+
+    /**
+     * Consume all of the values produced for the named keyed item as an index. The index is built once per
+     * execution and is shared between all consuming steps.
+     *
+     * @param type the item element type (must not be {@code null})
+     * @param argument the item argument (must not be {@code null})
+     * @param <U> the upper bound of the argument type
+     * @param <K> the key type
+     * @param <T> the item type
+     * @return the index of the produced items (not {@code null})
+     * @throws IllegalArgumentException if this step was not declared to consume {@code type}, or if {@code type} is
+     *         {@code null} or is not a {@link KeyedItem}, or if {@code type} is consumed as a stream
+     */
+    public <U, K, T extends MultiClassItem<U> & KeyedItem<K>> MultiIndex<K, T> consumeIndex(Class<T> type,
+            Class<? extends U> argument) {
+        Assert.checkNotNullParam("type", type);
+        Assert.checkNotNullParam("argument", argument);
+        return doConsumeIndex(new ItemId(type, argument));
+    }
+
+    /**
+     * Consume the values produced for the named item as a stream. Each item is published to subscribers as soon as
+     * it is produced; the stream completes once every producer of the item has completed. If this step declared its
+     * consumption of the item with {@link ConsumeFlag#STREAMED}, the step may be started before the producers have
+     * completed, and the step itself does not complete until all of its subscriptions have completed or have been
+     * cancelled. Subscriptions must be established while the step is running.
+     *
+     * @param type the item element type (must not be {@code null})
+     * @param <T> the item type
+     * @return the publisher of produced items (not {@code null})
+     * @throws IllegalArgumentException if this step was not declared to consume {@code type}, or if {@code type} is
+     *         {@code null}
+     */
+    public <T extends MultiItem> Flow.Publisher<T> consumeStream(Class<T> type) {
+        Assert.checkNotNullParam("type", type);
+        if (ClassItem.class.isAssignableFrom(type)) {
+            throw log.namedNeedsArgument(type);
+        }
+        return doConsumeStream(new ItemId(type));
+    }
+
+    /**
+     * Consume the values produced for the named item as a stream. Each item is published to subscribers as soon as
+     * it is produced; the stream completes once every producer of the item has completed. If this step declared its
+     * consumption of the item with {@link ConsumeFlag#STREAMED}, the step may be started before the producers have
+     * completed, and the step itself does not complete until all of its subscriptions have completed or have been
+     * cancelled. Subscriptions must be established while the step is running.
+     *
+     * @param type the item element type (must not be {@code null})
+     * @param argument the item argument (must not be {@code null})
+     * @param <U> the upper bound of the argument type
+     * @param <T> the item type
+     * @return the publisher of produced items (not {@code null})
+     * @throws IllegalArgumentException if this step was not declared to consume {@code type}, or if {@code type} is
+     *         {@code null}
+     */
+    public <U, T extends MultiClassItem<U>> Flow.Publisher<T> consumeStream(Class<T> type, Class<? extends U> argument) {
+        Assert.checkNotNullParam("type", type);
+        Assert.checkNotNullParam("argument", argument);
+        return doConsumeStream(new ItemId(type, argument));
+    }
+
     /**
      * Determine if an item was produced and is therefore available to be {@linkplain #consume(Class) consumed}.
      *
@@ -327,6 +431,9 @@ public final class StepContext {
             throw log.namedNeedsArgument(type);
         }
         final ItemId id = new ItemId(type);
+        if (stepInfo.consumes().contains(id)) {
+            execution.demand(id);
+        }
         return stepInfo.consumes().contains(id) && id.isMulti()
                 ? !execution.getMultis().getOrDefault(id, Collections.emptyList()).isEmpty()
                 : execution.getSingles().containsKey(id);
@@ -345,6 +452,9 @@ public final class StepContext {
         Assert.checkNotNullParam("type", type);
         Assert.checkNotNullParam("argument", argument);
         final ItemId id = new ItemId(type, argument);
+        if (stepInfo.consumes().contains(id)) {
+            execution.demand(id);
+        }
         return stepInfo.consumes().contains(id) && id.isMulti()
                 ? !execution.getMultis().getOrDefault(id, Collections.emptyList()).isEmpty()
                 : execution.getSingles().containsKey(id);
@@ -446,6 +556,21 @@ public final class StepContext {
         markAsFailed();
     }
 
+    /**
+     * Report that a constructor or method invoked by the step has failed, logging the failure and marking the
+     * execution as failed. This is how steps registered by generated {@link StepRegistrar}s report their failures.
+     *
+     * @param executable a description of the constructor or method, such as {@code "method void Foo.bar()"}
+     *        (must not be {@code null})
+     * @param problem the problem to report (must not be {@code null})
+     */
+    public void addInvocationProblem(final String executable, final Throwable problem) {
+        Assert.checkNotNullParam("executable", executable);
+        Assert.checkNotNullParam("problem", problem);
+        log.failedToInvoke(executable, problem);
+        addProblem(problem);
+    }
+
     /**
      * Get an executor which can be used for asynchronous tasks.
      *
@@ -569,6 +694,10 @@ public final class StepContext {
                     list.add(value);
                 }
             }
+            final ItemStream stream = execution.getStream(id);
+            if (stream != null) {
+                stream.add(value);
+            }
         } else {
             if (execution.getSingles().putIfAbsent(id, value) != null) {
                 throw log.cannotMulti(id);
@@ -576,6 +705,76 @@ public final class StepContext {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private <K, T> MultiIndex<K, T> doConsumeIndex(ItemId id) {
+        if (state != State.RUNNING) {
+            throw log.stepNotRunning();
+        }
+        if (!id.isMulti()) {
+            throw log.cannotMulti(id);
+        }
+        if (!KeyedItem.class.isAssignableFrom(id.itemType())) {
+            throw log.cannotIndex(id);
+        }
+        if (!stepInfo.consumes().contains(id)) {
+            throw log.undeclaredItem(id);
+        }
+        if (stepInfo.streamed().contains(id)) {
+            // the producers may still be running, so the index would be incomplete
+            throw log.cannotIndexStreamed(id);
+        }
+        execution.demand(id);
+        return (MultiIndex<K, T>) execution.getIndex(id);
+    }
+
+    private <T> Flow.Publisher<T> doConsumeStream(ItemId id) {
+        if (state != State.RUNNING) {
+            throw log.stepNotRunning();
+        }
+        if (!id.isMulti()) {
+            throw log.cannotStream(id);
+        }
+        if (!stepInfo.consumes().contains(id)) {
+            throw log.undeclaredItem(id);
+        }
+        ItemStream stream = execution.getStream(id);
+        if (stream == null) {
+            // nobody streams this item, so every producer has already completed
+            stream = new ItemStream(id, 0, execution.getMultis().getOrDefault(id, List.of()));
+        }
+        return stream.publisherFor(this);
+    }
+
+    Object stepClassInstance(Object key, Function<StepContext, Object> construct) {
+        return execution.stepClassInstance(key, this, construct);
+    }
+
+    boolean streamStarted() {
+        int pending;
+        do {
+            pending = this.pending;
+            if (pending == 0 || state != State.RUNNING) {
+                return false;
+            }
+        } while (!pendingHandle.compareAndSet(this, pending, pending + 1));
+        return true;
+    }
+
+    void streamFinished() {
+        final StepContext next = finish();
+        if (next != null) {
+            // the last stream was closed by another step, so schedule the fused step normally
+            execution.getExecutor().execute(next::run);
+        }
+    }
+
+    private StepContext finish() {
+        if ((int) pendingHandle.getAndAdd(this, -1) == 1) {
+            return complete();
+        }
+        return null;
+    }
+
     void depFinished() {
         final int remaining = dependencies.decrementAndGet();
         log.tracef("Dependency of \"%2$s\" finished; %1$d remaining", remaining, stepInfo.step());
@@ -584,10 +783,46 @@ public final class StepContext {
         }
     }
 
+    void runLazy() {
+        if (demanded.compareAndSet(false, true)) {
+            // run it on the demanding thread
+            run();
+        }
+        boolean intr = false;
+        try {
+            for (;;) {
+                try {
+                    lazyDone.await();
+                    break;
+                } catch (InterruptedException e) {
+                    intr = true;
+                }
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     void run() {
+        // run each fused step in turn on this thread
+        StepContext next = this;
+        do {
+            next = next.runStep();
+        } while (next != null);
+    }
+
+    /**
+     * Run this step.
+     *
+     * @return the fused step to run next on this thread, or {@code null} if there is none
+     */
+    private StepContext runStep() {
         final Execution execution = this.execution;
         final StepInfo stepInfo = this.stepInfo;
         final Consumer<StepContext> step = stepInfo.step();
+        StepContext next;
         try {
             if (execution.isErrorReported()) {
                 this.start = this.end = execution.clock().instant();
@@ -601,8 +836,6 @@ public final class StepContext {
                 Thread.currentThread().setContextClassLoader(classLoader);
                 try {
                     step.accept(this);
-                    casStateRequired(State.RUNNING, State.COMPLETE);
-                    this.end = execution.clock().instant();
                 } catch (Throwable t) {
                     casStateRequired(State.RUNNING, State.FAILED);
                     this.end = execution.clock().instant();
@@ -611,22 +844,55 @@ public final class StepContext {
                     execution.setErrorReported();
                 } finally {
                     Thread.currentThread().setContextClassLoader(old);
-                    if (log.isTraceEnabled()) {
-                        log.finishingStep(step, duration());
-                    }
                 }
             }
+        } finally {
+            // the step is complete unless it has open item streams
+            next = finish();
+        }
+        return next;
+    }
+
+    /**
+     * Complete this step, notifying its dependents.
+     *
+     * @return the fused step which should be run next, or {@code null} if there is none
+     */
+    private StepContext complete() {
+        final Execution execution = this.execution;
+        final StepInfo stepInfo = this.stepInfo;
+        try {
+            if (stateHandle.compareAndSet(this, State.RUNNING, State.COMPLETE)) {
+                this.end = execution.clock().instant();
+            }
+            if (state != State.SKIPPED && log.isTraceEnabled()) {
+                log.finishingStep(stepInfo.step(), duration());
+            }
         } finally {
             execution.removeStepContext(stepInfo, this);
+            execution.releaseConsumed(stepInfo);
+            execution.producerFinished(stepInfo);
+        }
+        if (lazyDone != null) {
+            // the demanding step(s) are already running, and lazy steps are never end steps
+            lazyDone.countDown();
+            return null;
+        }
+        final StepGraph graph = stepInfo.graph();
+        final int index = stepInfo.index();
+        if (graph.isFused(index)) {
+            // the only dependent waits for nothing else, so run it next without scheduling it
+            return execution.getStepContext(graph.dependent(index, 0));
         }
-        final Set<StepId> dependents = stepInfo.dependents();
-        if (!dependents.isEmpty()) {
-            for (StepId id : dependents) {
-                execution.getStepContext(execution.chain().stepInfo(id)).depFinished();
+        final int dependentCount = graph.dependentCount(index);
+        if (dependentCount > 0) {
+            for (int i = 0; i < dependentCount; i++) {
+                execution.getStepContext(graph.dependent(index, i)).depFinished();
             }
         } else {
             execution.depFinished();
         }
+        return null;
     }
 
     private void casStateRequired(State expect, State update) {
@@ -0,0 +1,250 @@
+package io.quarkus.qlue;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The dependency graph of the steps of a chain. Each step is identified by its index in the chain, and the
+ * dependencies and dependents of every step are stored as compressed sparse rows: the dependencies of step
+ * {@code i} are the steps {@code dependencies[dependencyStarts[i]]} up to (but not including)
+ * {@code dependencies[dependencyStarts[i + 1]]}, and likewise for dependents.
+ */
+final class StepGraph {
+    private final StepInfo[] steps;
+    private final int[] dependencyStarts;
+    private final int[] dependencies;
+    private final int[] dependentStarts;
+    private final int[] dependents;
+    private final BitSet fused;
+
+    StepGraph(final int[] dependencyStarts, final int[] dependencies, final int[] dependentStarts,
+            final int[] dependents) {
+        final int stepCount = dependencyStarts.length - 1;
+        this.steps = new StepInfo[stepCount];
+        this.dependencyStarts = dependencyStarts;
+        this.dependencies = dependencies;
+        this.dependentStarts = dependentStarts;
+        this.dependents = dependents;
+        // find the links of linear runs of steps, where a step's only dependent has no other dependency
+        final BitSet fused = new BitSet(stepCount);
+        for (int i = 0; i < stepCount; i++) {
+            if (dependentCount(i) == 1 && dependencyCount(dependents[dependentStarts[i]]) == 1) {
+                fused.set(i);
+            }
+        }
+        this.fused = fused;
+    }
+
+    void setStep(int index, StepInfo stepInfo) {
+        steps[index] = stepInfo;
+    }
+
+    int stepCount() {
+        return steps.length;
+    }
+
+    StepInfo step(int index) {
+        return steps[index];
+    }
+
+    int dependencyCount(int index) {
+        return dependencyStarts[index + 1] - dependencyStarts[index];
+    }
+
+    int dependentCount(int index) {
+        return dependentStarts[index + 1] - dependentStarts[index];
+    }
+
+    /**
+     * Get a dependent of a step.
+     *
+     * @param index the index of the step
+     * @param n the number of the dependent, which is less than {@link #dependentCount(int)}
+     * @return the dependent step (not {@code null})
+     */
+    StepInfo dependent(int index, int n) {
+        return steps[dependents[dependentStarts[index] + n]];
+    }
+
+    /**
+     * Get the index of a dependency of a step.
+     *
+     * @param index the index of the step
+     * @param n the number of the dependency, which is less than {@link #dependencyCount(int)}
+     * @return the index of the dependency
+     */
+    int dependency(int index, int n) {
+        return dependencies[dependencyStarts[index] + n];
+    }
+
+    /**
+     * Get the scheduled steps in an order where each step follows all of its dependencies.
+     *
+     * @return the indexes of the scheduled steps (not {@code null})
+     */
+    int[] order() {
+        final int stepCount = steps.length;
+        final int[] pending = new int[stepCount];
+        final int[] order = new int[stepCount];
+        int count = 0;
+        for (int i = 0; i < stepCount; i++) {
+            if (!steps[i].isLazy()) {
+                pending[i] = dependencyCount(i);
+                if (pending[i] == 0) {
+                    order[count++] = i;
+                }
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            final int step = order[k];
+            for (int i = dependentStarts[step]; i < dependentStarts[step + 1]; i++) {
+                if (--pending[dependents[i]] == 0) {
+                    order[count++] = dependents[i];
+                }
+            }
+        }
+        return count == stepCount ? order : Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Determine whether a step is fused to its dependent. A fused step has exactly one dependent, which has no other
+     * dependencies, so the dependent is run on the same thread as soon as the step completes rather than being
+     * scheduled separately.
+     *
+     * @param index the index of the step
+     * @return {@code true} if the step is fused to its only dependent
+     */
+    boolean isFused(int index) {
+        return fused.get(index);
+    }
+
+    int[] dependencyRow(int index) {
+        return Arrays.copyOfRange(dependencies, dependencyStarts[index], dependencyStarts[index + 1]);
+    }
+
+    Set<StepId> dependencies(int index) {
+        return new IdSet(dependencies, dependencyStarts[index], dependencyStarts[index + 1]);
+    }
+
+    Set<StepId> dependents(int index) {
+        return new IdSet(dependents, dependentStarts[index], dependentStarts[index + 1]);
+    }
+
+    /**
+     * Transitively reduce the dependencies of the scheduled steps, removing each dependency which is also a
+     * dependency (directly or indirectly) of another dependency of the same step. The dependencies of lazy steps
+     * are left as they are, because lazy steps are not scheduled.
+     *
+     * @param rows the sorted dependencies of each step, which are replaced by the reduced dependencies
+     * @param lazy whether each step is lazy
+     */
+    static void reduce(int[][] rows, boolean[] lazy) {
+        final int stepCount = rows.length;
+        // find the dependents of each scheduled step
+        final int[] dependentCounts = new int[stepCount];
+        final int[] pending = new int[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            if (!lazy[i]) {
+                pending[i] = rows[i].length;
+                for (int dependency : rows[i]) {
+                    dependentCounts[dependency]++;
+                }
+            }
+        }
+        final int[][] dependents = new int[stepCount][];
+        for (int i = 0; i < stepCount; i++) {
+            dependents[i] = new int[dependentCounts[i]];
+        }
+        final int[] fill = new int[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            if (!lazy[i]) {
+                for (int dependency : rows[i]) {
+                    dependents[dependency][fill[dependency]++] = i;
+                }
+            }
+        }
+        // visit the scheduled steps so that each step follows all of its dependencies
+        final int[] order = new int[stepCount];
+        int count = 0;
+        for (int i = 0; i < stepCount; i++) {
+            if (!lazy[i] && pending[i] == 0) {
+                order[count++] = i;
+            }
+        }
+        final BitSet[] ancestors = new BitSet[stepCount];
+        for (int k = 0; k < count; k++) {
+            final int step = order[k];
+            final int[] row = rows[step];
+            // everything that a dependency waits for is implied
+            final BitSet implied = new BitSet(stepCount);
+            for (int dependency : row) {
+                implied.or(ancestors[dependency]);
+            }
+            final BitSet stepAncestors = (BitSet) implied.clone();
+            int kept = 0;
+            for (int dependency : row) {
+                stepAncestors.set(dependency);
+                if (!implied.get(dependency)) {
+                    row[kept++] = dependency;
+                }
+                if (--dependentCounts[dependency] == 0) {
+                    // no remaining step needs the ancestors of this dependency
+                    ancestors[dependency] = null;
+                }
+            }
+            if (kept < row.length) {
+                rows[step] = Arrays.copyOf(row, kept);
+            }
+            ancestors[step] = stepAncestors;
+            for (int dependent : dependents[step]) {
+                if (--pending[dependent] == 0) {
+                    order[count++] = dependent;
+                }
+            }
+        }
+    }
+
+    /**
+     * An unmodifiable view of the identifiers of a range of steps.
+     */
+    final class IdSet extends AbstractSet<StepId> {
+        private final int[] edges;
+        private final int start;
+        private final int end;
+
+        IdSet(final int[] edges, final int start, final int end) {
+            this.edges = edges;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Iterator<StepId> iterator() {
+            return new Iterator<StepId>() {
+                int next = start;
+
+                public boolean hasNext() {
+                    return next < end;
+                }
+
+                public StepId next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return steps[edges[next++]].id();
+                }
+            };
+        }
+
+        public int size() {
+            return end - start;
+        }
+
+        public boolean isEmpty() {
+            return start == end;
+        }
+    }
+}
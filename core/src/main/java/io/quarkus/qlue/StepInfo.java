@@ -0,0 +1,124 @@
+package io.quarkus.qlue;
+
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Information about a build step.
+ */
+public final class StepInfo {
+    private final Consumer<StepContext> step;
+    private final StepId id;
+    private final StepGraph graph;
+    private final int index;
+    private final Set<ItemId> consumes;
+    private final Set<ItemId> produces;
+    private final Set<ItemId> streamed;
+    private final boolean lazy;
+
+    StepInfo(final StepBuilder builder, final StepGraph graph, final int index, final boolean lazy) {
+        this.id = builder.id();
+        step = builder.step();
+        consumes = Set.copyOf(builder.realConsumes());
+        produces = Set.copyOf(builder.realProduces());
+        streamed = builder.getConsumes().values().stream()
+                .filter(Consume::isStreamed)
+                .map(Consume::itemId)
+                .collect(Collectors.toUnmodifiableSet());
+        this.graph = graph;
+        this.index = index;
+        this.lazy = lazy;
+    }
+
+    /**
+     * Construct a copy of a step for another chain.
+     *
+     * @param original the original step (not {@code null})
+     * @param graph the graph of the other chain (not {@code null})
+     * @param index the index of the step in the other chain
+     * @param lazy {@code true} if the step is lazy in the other chain
+     */
+    StepInfo(final StepInfo original, final StepGraph graph, final int index, final boolean lazy) {
+        id = original.id;
+        step = original.step;
+        consumes = original.consumes;
+        produces = original.produces;
+        streamed = original.streamed;
+        this.graph = graph;
+        this.index = index;
+        this.lazy = lazy;
+    }
+
+    Consumer<StepContext> step() {
+        return step;
+    }
+
+    Set<ItemId> streamed() {
+        return streamed;
+    }
+
+    StepGraph graph() {
+        return graph;
+    }
+
+    int index() {
+        return index;
+    }
+
+    /**
+     * {@return the identifier of this step}
+     */
+    public StepId id() {
+        return id;
+    }
+
+    /**
+     * {@return the number of steps that this step depends on}
+     */
+    public int dependencyCount() {
+        return graph.dependencyCount(index);
+    }
+
+    /**
+     * {@return the set of steps that this step depends on}
+     */
+    public Set<StepId> dependencies() {
+        return graph.dependencies(index);
+    }
+
+    /**
+     * {@return the number of steps that depend on this step}
+     */
+    public int dependentCount() {
+        return graph.dependentCount(index);
+    }
+
+    /**
+     * {@return the set of steps that depend on this step}
+     */
+    public Set<StepId> dependents() {
+        return graph.dependents(index);
+    }
+
+    /**
+     * {@return the set of item identifiers that are consumed by this step}
+     */
+    public Set<ItemId> consumes() {
+        return consumes;
+    }
+
+    /**
+     * {@return the set of item identifiers that are produced by this step}
+     */
+    public Set<ItemId> produces() {
+        return produces;
+    }
+
+    /**
+     * {@return {@code true} if this step is only run when one of its items is consumed}
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+}
@@ -0,0 +1,113 @@
+package io.quarkus.qlue;
+
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.filterArguments;
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.lang.invoke.MethodHandles.permuteArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Compilers for the method handles which invoke step methods, constructors, and field setters. Each parameter
+ * function is folded into the target handle, so that the resultant handle accepts only the step context (and
+ * the receiver, if any) and can be called with {@code invokeExact} without allocating an argument array.
+ */
+final class StepInvokers {
+    private StepInvokers() {
+    }
+
+    static final MethodType INVOKER_TYPE = methodType(Object.class, StepContext.class);
+    static final MethodType INSTANCE_INVOKER_TYPE = methodType(Object.class, Object.class, StepContext.class);
+    static final MethodType SETTER_TYPE = methodType(void.class, Object.class, StepContext.class);
+
+    private static final MethodType PARAMETER_TYPE = methodType(Object.class, StepContext.class);
+    private static final MethodHandle APPLY;
+
+    static {
+        try {
+            APPLY = lookup().findVirtual(Function.class, "apply", methodType(Object.class, Object.class));
+        } catch (NoSuchMethodException e) {
+            throw new NoSuchMethodError(e.getMessage());
+        } catch (IllegalAccessException e) {
+            throw ReflectUtil.toError(e);
+        }
+    }
+
+    /**
+     * Compile an invoker for a constructor or static method.
+     *
+     * @param target the target handle (must not be {@code null})
+     * @param parameters the functions which produce each argument (must not be {@code null})
+     * @return the invoker, whose type is {@link #INVOKER_TYPE}
+     */
+    static MethodHandle compile(MethodHandle target, List<Function<StepContext, Object>> parameters) {
+        return spread(generic(target), 0, parameters, INVOKER_TYPE);
+    }
+
+    /**
+     * Compile an invoker for an instance method. The receiver is the first argument of the invoker.
+     *
+     * @param target the target handle (must not be {@code null})
+     * @param parameters the functions which produce each argument after the receiver (must not be {@code null})
+     * @return the invoker, whose type is {@link #INSTANCE_INVOKER_TYPE}
+     */
+    static MethodHandle compileVirtual(MethodHandle target, List<Function<StepContext, Object>> parameters) {
+        return spread(generic(target), 1, parameters, INSTANCE_INVOKER_TYPE);
+    }
+
+    /**
+     * Compile an invoker for a static method, which accepts and ignores a receiver argument.
+     *
+     * @param target the target handle (must not be {@code null})
+     * @param parameters the functions which produce each argument (must not be {@code null})
+     * @return the invoker, whose type is {@link #INSTANCE_INVOKER_TYPE}
+     */
+    static MethodHandle compileStatic(MethodHandle target, List<Function<StepContext, Object>> parameters) {
+        return dropArguments(compile(target, parameters), 0, Object.class);
+    }
+
+    /**
+     * Compile an injector for an instance field.
+     *
+     * @param setter the field setter handle (must not be {@code null})
+     * @param value the function which produces the field value (must not be {@code null})
+     * @return the injector, whose type is {@link #SETTER_TYPE}
+     */
+    static MethodHandle compileSetter(MethodHandle setter, Function<StepContext, Object> value) {
+        return filterArguments(setter.asType(methodType(void.class, Object.class, Object.class)), 1, parameter(value));
+    }
+
+    private static MethodHandle generic(MethodHandle target) {
+        // variable arity targets would otherwise collect the trailing argument into a new array
+        final MethodHandle fixed = target.asFixedArity();
+        return fixed.asType(fixed.type().generic());
+    }
+
+    private static MethodHandle spread(MethodHandle generic, int pos, List<Function<StepContext, Object>> parameters,
+            MethodType invokerType) {
+        final int cnt = parameters.size();
+        final MethodHandle[] filters = new MethodHandle[cnt];
+        for (int i = 0; i < cnt; i++) {
+            filters[i] = parameter(parameters.get(i));
+        }
+        // now every argument after the receiver accepts the step context...
+        final MethodHandle filtered = filterArguments(generic, pos, filters);
+        // ...so pass the single step context to each of them
+        final int[] reorder = new int[pos + cnt];
+        for (int i = 0; i < pos; i++) {
+            reorder[i] = i;
+        }
+        for (int i = 0; i < cnt; i++) {
+            reorder[pos + i] = pos;
+        }
+        return permuteArguments(filtered, invokerType, reorder);
+    }
+
+    private static MethodHandle parameter(Function<StepContext, Object> function) {
+        return APPLY.bindTo(function).asType(PARAMETER_TYPE);
+    }
+}
@@ -0,0 +1,16 @@
+package io.quarkus.qlue;
+
+/**
+ * A registrar which adds steps to a chain builder directly, without reflection. Implementations are usually
+ * generated at build time by the {@code qlue-processor} annotation processor for each class that has
+ * {@link io.quarkus.qlue.annotation.Step @Step} methods, in which case they are also listed as services so that they
+ * can be found using {@link java.util.ServiceLoader}.
+ */
+public interface StepRegistrar {
+    /**
+     * Register steps with the given chain builder.
+     *
+     * @param chainBuilder the chain builder (not {@code null})
+     */
+    void registerSteps(ChainBuilder chainBuilder);
+}
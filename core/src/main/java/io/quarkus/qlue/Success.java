@@ -23,9 +23,10 @@ public final class Success extends Result {
     private final ConcurrentHashMap<ItemId, Item> simpleItems;
     private final ConcurrentHashMap<ItemId, List<Item>> multiItems;
 
-    Success(final Instant start, final Instant end, final ConcurrentHashMap<ItemId, Item> simpleItems,
-            final ConcurrentHashMap<ItemId, List<Item>> multiItems, final Map<StepId, StepSummary> summaries) {
-        super(start, end, summaries);
+    Success(final Chain chain, final Instant start, final Instant end,
+            final ConcurrentHashMap<ItemId, Item> simpleItems, final ConcurrentHashMap<ItemId, List<Item>> multiItems,
+            final Map<StepId, StepSummary> summaries) {
+        super(chain, start, end, summaries);
         this.simpleItems = simpleItems;
         this.multiItems = multiItems;
     }
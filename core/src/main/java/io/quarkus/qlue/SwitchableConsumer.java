@@ -0,0 +1,48 @@
+package io.quarkus.qlue;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ *
+ */
+final class SwitchableConsumer<T> implements Consumer<T> {
+    private final String toString;
+    Consumer<T> delegate;
+    private Supplier<? extends Consumer<T>> initializer;
+
+    SwitchableConsumer(final String toString) {
+        this.toString = toString;
+    }
+
+    public void accept(final T t) {
+        delegate.accept(t);
+    }
+
+    void setDelegate(final Consumer<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Set the initializer which creates the delegate when the consumer is {@linkplain #materialize() materialized}.
+     * This allows the potentially expensive creation of the delegate to be skipped for steps which are never
+     * included in a chain.
+     *
+     * @param initializer the delegate initializer
+     */
+    void setInitializer(final Supplier<? extends Consumer<T>> initializer) {
+        this.initializer = initializer;
+    }
+
+    synchronized void materialize() {
+        final Supplier<? extends Consumer<T>> initializer = this.initializer;
+        if (initializer != null) {
+            delegate = initializer.get();
+            this.initializer = null;
+        }
+    }
+
+    public String toString() {
+        return toString;
+    }
+}
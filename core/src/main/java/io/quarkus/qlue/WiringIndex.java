@@ -0,0 +1,245 @@
+package io.quarkus.qlue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The producer index of the steps of a chain builder, which is used to wire a chain. An index which is
+ * {@linkplain #isRetained() retained} by the chain also records the consumers of each item and the
+ * {@linkplain Chain.Reach reach} of each wired step, so that the chain can be rebuilt incrementally after some of its
+ * steps are added or removed.
+ */
+final class WiringIndex {
+    private final Set<ItemId> initialIds;
+    private final Map<StepId, StepBuilder> stepBuilders;
+    private final Map<ItemId, Set<Produce>> allProduces;
+    private final Map<ItemId, Set<Produce>> realProducers;
+    // the following are null unless the index is retained
+    private final Map<ItemId, Set<StepBuilder>> consumers;
+    private final Map<StepBuilder, Chain.Reach> reaches;
+    // the following are null unless the index was derived from another index
+    private final Set<ItemId> affected;
+    private final Set<StepBuilder> checked;
+    private ChainBuilder template;
+
+    private WiringIndex(final Set<ItemId> initialIds, final Map<StepId, StepBuilder> stepBuilders,
+            final Map<ItemId, Set<Produce>> allProduces, final Map<ItemId, Set<Produce>> realProducers,
+            final Map<ItemId, Set<StepBuilder>> consumers, final Map<StepBuilder, Chain.Reach> reaches,
+            final Set<ItemId> affected, final Set<StepBuilder> checked) {
+        this.initialIds = initialIds;
+        this.stepBuilders = stepBuilders;
+        this.allProduces = allProduces;
+        this.realProducers = realProducers;
+        this.consumers = consumers;
+        this.reaches = reaches;
+        this.affected = affected;
+        this.checked = checked;
+    }
+
+    /**
+     * Index the steps of a chain builder from scratch.
+     *
+     * @param chainBuilder the chain builder (not {@code null})
+     * @param initialIds the initial items of the chain (not {@code null})
+     * @param parallel {@code true} to index the steps in parallel
+     * @return the index (not {@code null})
+     */
+    static WiringIndex of(final ChainBuilder chainBuilder, final Set<ItemId> initialIds, final boolean parallel) {
+        final Map<StepId, StepBuilder> stepBuilders = Chain.stream(chainBuilder.steps, parallel)
+                .collect(Collectors.toMap(
+                        StepBuilder::id,
+                        Function.identity()));
+        final Map<ItemId, Set<Produce>> allProduces = Chain.stream(stepBuilders.values(), parallel)
+                .flatMap(sb -> sb.getProduces().values().stream())
+                .collect(Collectors.groupingBy(Produce::itemId, Collectors.toUnmodifiableSet()));
+        final Map<ItemId, Set<Produce>> realProducers = Chain.stream(allProduces.values(), parallel)
+                .flatMap(Collection::stream)
+                .filter(Produce::isReal)
+                .collect(Collectors.groupingBy(Produce::itemId, Collectors.toUnmodifiableSet()));
+        Map<ItemId, Set<StepBuilder>> consumers = null;
+        Map<StepBuilder, Chain.Reach> reaches = null;
+        if (chainBuilder.incremental) {
+            consumers = new HashMap<>();
+            for (StepBuilder builder : chainBuilder.steps) {
+                for (ItemId itemId : builder.getConsumes().keySet()) {
+                    consumers.computeIfAbsent(itemId, WiringIndex::newIdentitySet).add(builder);
+                }
+            }
+            reaches = new HashMap<>();
+        }
+        return new WiringIndex(initialIds, stepBuilders, allProduces, realProducers, consumers, reaches, null, null);
+    }
+
+    /**
+     * Derive the index of a chain builder which was derived from the chain that retained this index.
+     * Only the items which are produced by the added or removed steps are indexed again, and only the reach of
+     * the steps which consume those items is forgotten. This index is not modified.
+     *
+     * @param chainBuilder the derived chain builder (not {@code null})
+     * @return the derived index (not {@code null})
+     */
+    WiringIndex derive(final ChainBuilder chainBuilder) {
+        final Set<StepBuilder> added = chainBuilder.added;
+        final Set<StepBuilder> removed = chainBuilder.removed;
+        final Map<StepId, StepBuilder> stepBuilders = new HashMap<>(this.stepBuilders);
+        final Set<ItemId> affected = new HashSet<>();
+        for (StepBuilder builder : removed) {
+            stepBuilders.remove(builder.id());
+            affected.addAll(builder.getProduces().keySet());
+        }
+        for (StepBuilder builder : added) {
+            stepBuilders.put(builder.id(), builder);
+            affected.addAll(builder.getProduces().keySet());
+        }
+        // index the producers of the affected items again
+        final Map<ItemId, Set<Produce>> allProduces = new HashMap<>(this.allProduces);
+        final Map<ItemId, Set<Produce>> realProducers = new HashMap<>(this.realProducers);
+        for (ItemId itemId : affected) {
+            final Set<Produce> produces = new HashSet<>();
+            for (Produce produce : this.allProduces.getOrDefault(itemId, Set.of())) {
+                if (!removed.contains(produce.stepBuilder())) {
+                    produces.add(produce);
+                }
+            }
+            for (StepBuilder builder : added) {
+                final Produce produce = builder.getProduces().get(itemId);
+                if (produce != null) {
+                    produces.add(produce);
+                }
+            }
+            final Set<Produce> real = produces.stream().filter(Produce::isReal).collect(Collectors.toUnmodifiableSet());
+            if (produces.isEmpty()) {
+                allProduces.remove(itemId);
+            } else {
+                allProduces.put(itemId, Set.copyOf(produces));
+            }
+            if (real.isEmpty()) {
+                realProducers.remove(itemId);
+            } else {
+                realProducers.put(itemId, real);
+            }
+        }
+        // update the consumers, copying each set which changes
+        final Map<ItemId, Set<StepBuilder>> consumers = new HashMap<>(this.consumers);
+        final Set<ItemId> copied = new HashSet<>();
+        for (StepBuilder builder : removed) {
+            for (ItemId itemId : builder.getConsumes().keySet()) {
+                copyOnWrite(consumers, copied, itemId).remove(builder);
+            }
+        }
+        for (StepBuilder builder : added) {
+            for (ItemId itemId : builder.getConsumes().keySet()) {
+                copyOnWrite(consumers, copied, itemId).add(builder);
+            }
+        }
+        // forget the reach of each step which consumes an affected item
+        final Map<StepBuilder, Chain.Reach> reaches = new HashMap<>(this.reaches);
+        reaches.keySet().removeAll(removed);
+        for (ItemId itemId : affected) {
+            for (StepBuilder consumer : consumers.getOrDefault(itemId, Set.of())) {
+                reaches.remove(consumer);
+            }
+        }
+        // every step whose reach is still known was included in a chain which was checked for cycles
+        final Set<StepBuilder> checked = newIdentitySet(null);
+        checked.addAll(reaches.keySet());
+        return new WiringIndex(initialIds, stepBuilders, allProduces, realProducers, consumers, reaches, affected,
+                checked);
+    }
+
+    private static Set<StepBuilder> copyOnWrite(Map<ItemId, Set<StepBuilder>> consumers, Set<ItemId> copied,
+            ItemId itemId) {
+        Set<StepBuilder> set = consumers.get(itemId);
+        if (copied.add(itemId)) {
+            final Set<StepBuilder> copy = newIdentitySet(null);
+            if (set != null) {
+                copy.addAll(set);
+            }
+            consumers.put(itemId, copy);
+            set = copy;
+        }
+        return set;
+    }
+
+    private static Set<StepBuilder> newIdentitySet(Object ignored) {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Get the reach of a step, computing it if it is not known.
+     *
+     * @param builder the step (not {@code null})
+     * @return the reach of the step (not {@code null})
+     */
+    Chain.Reach reach(StepBuilder builder) {
+        Chain.Reach reach = reaches == null ? null : reaches.get(builder);
+        if (reach == null) {
+            reach = Chain.reach(builder, allProduces, initialIds, stepBuilders);
+        }
+        return reach;
+    }
+
+    /**
+     * Record the reach of a step, if the index is retained. This must not be called concurrently.
+     *
+     * @param reach the reach of the step (not {@code null})
+     */
+    void reached(Chain.Reach reach) {
+        if (reaches != null) {
+            reaches.putIfAbsent(reach.builder(), reach);
+        }
+    }
+
+    boolean isRetained() {
+        return reaches != null;
+    }
+
+    Set<ItemId> initialIds() {
+        return initialIds;
+    }
+
+    Map<StepId, StepBuilder> stepBuilders() {
+        return stepBuilders;
+    }
+
+    Map<ItemId, Set<Produce>> allProduces() {
+        return allProduces;
+    }
+
+    Map<ItemId, Set<Produce>> realProducers() {
+        return realProducers;
+    }
+
+    /**
+     * {@return the items whose producers were indexed again, or {@code null} if every item was indexed}
+     */
+    Set<ItemId> affected() {
+        return affected;
+    }
+
+    /**
+     * {@return the steps which were already checked for cycles with their current reach, or {@code null} if every
+     * step was indexed}
+     */
+    Set<StepBuilder> checked() {
+        return checked;
+    }
+
+    /**
+     * {@return a copy of the chain builder that the chain was built from, or {@code null} if it is not retained}
+     */
+    ChainBuilder template() {
+        return template;
+    }
+
+    void setTemplate(final ChainBuilder template) {
+        this.template = template;
+    }
+}
@@ -1,5 +1,6 @@
 package io.quarkus.qlue._private;
 
+import java.io.IOException;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -133,12 +134,54 @@ public interface Messages extends BasicLogger {
     @Message(id = 35, value = "Step produces nothing: %s")
     IllegalArgumentException stepProducesNothing(StepId stepId);
 
+    @Message(id = 36, value = "Only multi items may be consumed as a stream: %s")
+    IllegalArgumentException cannotStream(Object itemId);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 37, value = "Subscriber of item stream %s failed")
+    void subscriberFailed(Object itemId, @Cause Throwable cause);
+
+    @Message(id = 38, value = "Only keyed multi items may be consumed as an index: %s")
+    IllegalArgumentException cannotIndex(Object item);
+
+    @Message(id = 40, value = "Step class %s could not be constructed")
+    IllegalStateException stepClassNotConstructed(Class<?> clazz);
+
+    @Message(id = 41, value = "Chain snapshot is invalid or truncated")
+    IOException invalidSnapshot();
+
+    @Message(id = 42, value = "Chain snapshot version %d is not supported")
+    IOException unsupportedSnapshotVersion(int version);
+
+    @Message(id = 43, value = "Item %s is not a final item of the chain")
+    IllegalArgumentException notFinalItem(Object itemId);
+
+    @Message(id = 44, value = "Chain was not built incrementally")
+    IllegalStateException notIncremental();
+
+    @Message(id = 45, value = "Step %s is present in more than one merged chain builder")
+    ChainBuildException duplicateStep(Object stepId);
+
+    @Message(id = 46, value = "A chain builder cannot be merged into itself")
+    IllegalArgumentException cannotMergeSelf();
+
+    @Message(id = 47, value = "Items which are consumed as a stream may not be consumed as an index: %s")
+    IllegalArgumentException cannotIndexStreamed(Object itemId);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 48, value = "Failed to invoke %s")
+    void failedToInvoke(String executable, @Cause Throwable t);
+
     // debug logs
 
     @LogMessage(level = Logger.Level.DEBUG)
     @Message(value = "Execution of step \"%s\" threw an exception")
     void stepFailed(@Cause Throwable cause, Object step);
 
+    @LogMessage(level = Logger.Level.DEBUG)
+    @Message(value = "Chain snapshot does not match the chain builder; wiring the chain instead")
+    void snapshotMismatch();
+
     // trace logs
 
     @LogMessage(level = Logger.Level.TRACE)
@@ -0,0 +1,16 @@
+package io.quarkus.qlue.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicate that the given step should only be run when one of its produced items is actually consumed.
+ *
+ * @see io.quarkus.qlue.StepBuilder#lazy()
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Lazy {
+}
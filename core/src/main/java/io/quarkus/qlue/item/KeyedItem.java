@@ -0,0 +1,16 @@
+package io.quarkus.qlue.item;
+
+/**
+ * A multi item which can be looked up by a key. Multi items which implement this interface may be consumed as a
+ * {@link io.quarkus.qlue.MultiIndex MultiIndex}, which is built once per execution and shared by all consumers.
+ *
+ * @param <K> the key type
+ */
+public interface KeyedItem<K> {
+    /**
+     * Get the key of this item. The key must not change for the lifetime of the item.
+     *
+     * @return the key (may be {@code null})
+     */
+    K key();
+}
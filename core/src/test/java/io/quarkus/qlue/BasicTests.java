@@ -0,0 +1,781 @@
+package io.quarkus.qlue;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.setMaxStackTraceElementsDisplayed;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.qlue.item.KeyedItem;
+import io.quarkus.qlue.item.MultiItem;
+import io.quarkus.qlue.item.SimpleItem;
+
+/**
+ */
+public class BasicTests {
+    @BeforeAll
+    public static void setup() {
+        setMaxStackTraceElementsDisplayed(Integer.MAX_VALUE);
+    }
+
+    public static final class DummyItem extends SimpleItem {
+    }
+
+    public static final class DummyItem2 extends SimpleItem {
+    }
+
+    public static final class DummyMultiItem extends MultiItem {
+    }
+
+    public static final class KeyedMultiItem extends MultiItem implements KeyedItem<String> {
+        public String key() {
+            return "key";
+        }
+    }
+
+    public static final class CloseableItem extends SimpleItem implements AutoCloseable {
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        public void close() {
+            closed.set(true);
+        }
+    }
+
+    @Test
+    public void testSimple() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        final AtomicBoolean ran = new AtomicBoolean();
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                ran.set(true);
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem.class);
+        Chain chain = builder.build();
+        final Result result = chain.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(ran.get());
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem.class));
+    }
+
+    @Test
+    public void testFailure() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                throw new NoClassDefFoundError("This is an intentional exception");
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem.class);
+        Chain chain = builder.build();
+        Result result = chain.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isFailure());
+    }
+
+    @Test
+    public void testFailure2() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                throw new NoClassDefFoundError("This is an intentional exception");
+            }
+        });
+
+        final AtomicBoolean ran = new AtomicBoolean();
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                ran.set(true);
+            }
+        });
+        stepBuilder.consumes(DummyItem.class);
+        stepBuilder.produces(DummyItem2.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem2.class);
+        Chain chain = builder.build();
+        Result result = chain.createExecutionBuilder().execute(Runnable::run);
+        assertFalse(ran.get());
+        assertTrue(result.isFailure());
+    }
+
+    @Test
+    public void testLinked() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                assertNotNull(context.consume(DummyItem.class));
+                context.produce(new DummyItem2());
+            }
+        });
+        stepBuilder.consumes(DummyItem.class);
+        stepBuilder.produces(DummyItem2.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem2.class);
+        final Chain chain = builder.build();
+        final Result result = chain.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem2.class));
+    }
+
+    @Test
+    public void testInitial() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addInitial(DummyItem.class);
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                assertNotNull(context.consume(DummyItem.class));
+                context.produce(new DummyItem2());
+            }
+        });
+        stepBuilder.consumes(DummyItem.class);
+        stepBuilder.produces(DummyItem2.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem2.class);
+        final Chain chain = builder.build();
+        final ExecutionBuilder eb = chain.createExecutionBuilder();
+        eb.produce(DummyItem.class, new DummyItem());
+        final Result result = eb.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem2.class));
+    }
+
+    @Test
+    public void testPruning() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        final AtomicBoolean ran = new AtomicBoolean();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                assertNotNull(context.consume(DummyItem.class));
+                context.produce(new DummyItem2());
+                ran.set(true);
+            }
+        });
+        stepBuilder.consumes(DummyItem.class);
+        stepBuilder.produces(DummyItem2.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem.class);
+        final Chain chain = builder.build();
+        final Result result = chain.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem.class));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void testCircular() {
+        final ChainBuilder builder = Chain.builder();
+        builder.addFinal(DummyItem.class);
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.consume(DummyItem2.class);
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.consumes(DummyItem2.class);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.consume(DummyItem.class);
+                context.produce(new DummyItem2());
+            }
+        });
+        stepBuilder.produces(DummyItem2.class);
+        stepBuilder.consumes(DummyItem.class);
+        stepBuilder.build();
+        assertThatExceptionOfType(ChainBuildException.class).isThrownBy(builder::build);
+    }
+
+    @Test
+    public void testDuplicate() {
+        final ChainBuilder builder = Chain.builder();
+        builder.addFinal(DummyItem.class);
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        assertThatExceptionOfType(ChainBuildException.class).isThrownBy(builder::build);
+    }
+
+    @Test
+    public void testDuplicateOverridable() {
+        final ChainBuilder builder = Chain.builder();
+        builder.addFinal(DummyItem.class);
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class, ProduceFlag.OVERRIDABLE);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class, ProduceFlag.OVERRIDABLE);
+        stepBuilder.build();
+        assertThatExceptionOfType(ChainBuildException.class).isThrownBy(builder::build);
+    }
+
+    @Test
+    public void testOverride() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addFinal(DummyItem.class);
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class, ProduceFlag.OVERRIDABLE);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        assertThatCode(builder::build).doesNotThrowAnyException();
+    }
+
+    @Test
+    public void testStreamedIndex() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        final StepBuilder producer = builder.addRawStep(context -> context.produce(new KeyedMultiItem()));
+        producer.produces(KeyedMultiItem.class);
+        producer.build();
+        final StepBuilder consumer = builder.addRawStep(context -> {
+            // the producer may still be running, so the index could be incomplete
+            assertThatExceptionOfType(IllegalArgumentException.class)
+                    .isThrownBy(() -> context.consumeIndex(KeyedMultiItem.class));
+            context.produce(new DummyItem());
+        });
+        consumer.consumes(KeyedMultiItem.class, ConsumeFlag.STREAMED);
+        consumer.produces(DummyItem.class);
+        consumer.build();
+        builder.addFinal(DummyItem.class);
+        final Result result = builder.build().createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem.class));
+    }
+
+    @Test
+    public void testReleaseIntermediates() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        final CloseableItem intermediate = new CloseableItem();
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(intermediate);
+            }
+        });
+        stepBuilder.produces(CloseableItem.class);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                assertFalse(context.consume(CloseableItem.class).closed.get());
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.consumes(CloseableItem.class);
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem.class);
+        final Chain chain = builder.build();
+        final Result result = chain.createExecutionBuilder().setReleaseIntermediates(true).execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem.class));
+        assertNull(result.asSuccess().consumeOptional(CloseableItem.class));
+        // released items are only dereferenced
+        assertFalse(intermediate.closed.get());
+    }
+
+    private static ChainBuilder snapshotBuilder(AtomicBoolean ran) {
+        final ChainBuilder builder = Chain.builder();
+        StepBuilder stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                context.produce(new DummyItem());
+            }
+        });
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                throw new IllegalStateException("Unused step was run");
+            }
+        });
+        stepBuilder.produces(CloseableItem.class);
+        stepBuilder.build();
+        stepBuilder = builder.addRawStep(new Consumer<StepContext>() {
+            public void accept(final StepContext context) {
+                assertNotNull(context.consume(DummyItem.class));
+                ran.set(true);
+                context.produce(new DummyItem2());
+            }
+        });
+        stepBuilder.consumes(DummyItem.class);
+        stepBuilder.produces(DummyItem2.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem2.class);
+        return builder;
+    }
+
+    @Test
+    public void testSnapshot() throws ChainBuildException, IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        snapshotBuilder(new AtomicBoolean()).snapshot().writeTo(os);
+        final ChainSnapshot snapshot = ChainSnapshot.readFrom(new ByteArrayInputStream(os.toByteArray()));
+        // a builder with the same steps matches, even though its step instances are different
+        final AtomicBoolean ran = new AtomicBoolean();
+        ChainBuilder builder = snapshotBuilder(ran);
+        assertTrue(snapshot.matches(builder));
+        Result result = builder.build(snapshot).createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertTrue(ran.get());
+        assertNotNull(result.asSuccess().consume(DummyItem2.class));
+        // a mapped file gives the same snapshot
+        final Path path = Files.createTempFile("qlue", ".snapshot");
+        try {
+            snapshot.write(path);
+            assertTrue(ChainSnapshot.read(path).matches(builder));
+        } finally {
+            Files.delete(path);
+        }
+        // a builder with different steps does not match, but can still be built
+        builder = snapshotBuilder(ran);
+        builder.addFinal(CloseableItem.class);
+        assertFalse(snapshot.matches(builder));
+        result = builder.build(snapshot).createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isFailure());
+        // damaged snapshots are rejected
+        final byte[] truncated = Arrays.copyOf(os.toByteArray(), os.size() - 1);
+        assertThatExceptionOfType(IOException.class)
+                .isThrownBy(() -> ChainSnapshot.readFrom(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    public void testLargeChain() throws ChainBuildException {
+        // enough steps to be wired in parallel
+        final ChainBuilder builder = Chain.builder();
+        for (int i = 0; i < 5000; i++) {
+            final StepBuilder stepBuilder = builder.addRawStep(context -> context.produce(new DummyMultiItem()));
+            stepBuilder.produces(DummyMultiItem.class);
+            stepBuilder.build();
+        }
+        final StepBuilder stepBuilder = builder.addRawStep(context -> {
+            assertEquals(5000, context.consumeMulti(DummyMultiItem.class).size());
+            context.produce(new DummyItem());
+        });
+        stepBuilder.consumes(DummyMultiItem.class);
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        builder.addFinal(DummyItem.class);
+        final Result result = builder.build().createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem.class));
+    }
+
+    @Test
+    public void testParallelWiringIsDeterministic() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        final StepBuilder first = builder.addRawStep(context -> context.produce(new DummyItem()));
+        first.produces(DummyItem.class);
+        first.build();
+        for (int i = 0; i < 100; i++) {
+            StepBuilder stepBuilder = builder.addRawStep(context -> context.produce(new DummyMultiItem()));
+            stepBuilder.consumes(DummyItem.class);
+            stepBuilder.produces(DummyMultiItem.class);
+            stepBuilder.build();
+            stepBuilder = builder.addRawStep(context -> context.produce(new KeyedMultiItem()));
+            stepBuilder.consumes(DummyMultiItem.class);
+            stepBuilder.produces(KeyedMultiItem.class);
+            stepBuilder.build();
+        }
+        final StepBuilder last = builder.addRawStep(context -> context.produce(new DummyItem2()));
+        last.consumes(DummyItem.class);
+        last.consumes(KeyedMultiItem.class);
+        last.produces(DummyItem2.class);
+        last.build();
+        // a step which is not needed for the final item
+        final StepBuilder unused = builder.addRawStep(context -> context.produce(new CloseableItem()));
+        unused.consumes(DummyItem2.class);
+        unused.produces(CloseableItem.class);
+        unused.build();
+        builder.addFinal(DummyItem2.class);
+        final Chain serial = new Chain(builder, Chain.wire(builder, false));
+        final Chain parallel = new Chain(builder, Chain.wire(builder, true));
+        assertNull(serial.stepInfo(unused.id()));
+        for (StepBuilder stepBuilder : builder.steps) {
+            final StepInfo serialInfo = serial.stepInfo(stepBuilder.id());
+            final StepInfo parallelInfo = parallel.stepInfo(stepBuilder.id());
+            if (serialInfo == null) {
+                assertNull(parallelInfo);
+            } else {
+                assertEquals(serialInfo.index(), parallelInfo.index());
+                assertEquals(serialInfo.dependencies(), parallelInfo.dependencies());
+            }
+        }
+        // the same problem is reported either way
+        final StepBuilder conflicting = builder.addRawStep(context -> context.produce(new DummyItem()));
+        conflicting.produces(DummyItem.class);
+        conflicting.build();
+        final StepBuilder conflicting2 = builder.addRawStep(context -> context.produce(new DummyItem2()));
+        conflicting2.produces(DummyItem2.class);
+        conflicting2.build();
+        final String serialMessage = assertThrows(ChainBuildException.class, () -> Chain.wire(builder, false)).getMessage();
+        final String parallelMessage = assertThrows(ChainBuildException.class, () -> Chain.wire(builder, true)).getMessage();
+        assertTrue(serialMessage.contains("Multiple producers of item"));
+        // the producers of the item are not listed in a particular order
+        assertEquals(serialMessage.substring(0, serialMessage.indexOf(": [")),
+                parallelMessage.substring(0, parallelMessage.indexOf(": [")));
+    }
+
+    @Test
+    public void testReduceDependencies() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.setReduceDependencies(true);
+        final StepBuilder first = builder.addRawStep(context -> context.produce(new DummyItem()));
+        first.produces(DummyItem.class);
+        first.build();
+        final StepBuilder second = builder.addRawStep(context -> {
+            assertNotNull(context.consume(DummyItem.class));
+            context.produce(new DummyItem2());
+        });
+        second.consumes(DummyItem.class);
+        second.produces(DummyItem2.class);
+        second.build();
+        final StepBuilder third = builder.addRawStep(context -> {
+            assertNotNull(context.consume(DummyItem.class));
+            assertNotNull(context.consume(DummyItem2.class));
+            context.produce(new CloseableItem());
+        });
+        third.consumes(DummyItem.class);
+        third.consumes(DummyItem2.class);
+        third.produces(CloseableItem.class);
+        third.build();
+        builder.addFinal(CloseableItem.class);
+        final Chain chain = builder.build();
+        // the third step waits for the first one through the second one
+        assertEquals(Set.of(second.id()), chain.stepInfo(third.id()).dependencies());
+        assertEquals(Set.of(second.id()), chain.stepInfo(first.id()).dependents());
+        final Result result = chain.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(CloseableItem.class));
+    }
+
+    @Test
+    public void testFusedSteps() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        final StepBuilder first = builder.addRawStep(context -> context.produce(new DummyItem()));
+        first.produces(DummyItem.class);
+        first.build();
+        final StepBuilder second = builder.addRawStep(context -> {
+            assertNotNull(context.consume(DummyItem.class));
+            context.produce(new DummyItem2());
+        });
+        second.consumes(DummyItem.class);
+        second.produces(DummyItem2.class);
+        second.build();
+        builder.addFinal(DummyItem2.class);
+        final AtomicInteger submitted = new AtomicInteger();
+        final Result result = builder.build().createExecutionBuilder().execute(task -> {
+            submitted.incrementAndGet();
+            task.run();
+        });
+        assertTrue(result.isSuccess());
+        // the second step runs right after the first one without being scheduled, but is still summarized
+        assertEquals(1, submitted.get());
+        assertEquals(Set.of(first.id(), second.id()), result.executedSteps());
+        assertEquals(StepContext.State.COMPLETE, result.stepSummary(second.id()).state());
+    }
+
+    @Test
+    public void testAnalysis() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        final StepBuilder first = builder.addRawStep(context -> context.produce(new DummyItem()));
+        first.produces(DummyItem.class);
+        first.build();
+        for (int i = 0; i < 3; i++) {
+            final StepBuilder stepBuilder = builder.addRawStep(context -> context.produce(new DummyMultiItem()));
+            stepBuilder.consumes(DummyItem.class);
+            stepBuilder.produces(DummyMultiItem.class);
+            stepBuilder.build();
+        }
+        final StepBuilder last = builder.addRawStep(context -> {
+            assertEquals(3, context.consumeMulti(DummyMultiItem.class).size());
+            context.produce(new DummyItem2());
+        });
+        last.consumes(DummyMultiItem.class);
+        last.produces(DummyItem2.class);
+        last.build();
+        builder.addFinal(DummyItem2.class);
+        final ChainAnalysis analysis = builder.build().analyze();
+        assertEquals(5, analysis.stepCount());
+        assertEquals(5, analysis.scheduledStepCount());
+        assertEquals(3, analysis.depth());
+        assertEquals(3, analysis.widestLevel());
+        assertEquals(3, analysis.maxFanIn());
+        assertEquals(3, analysis.maxFanOut());
+        assertEquals(List.of(last.id()), analysis.fanInHotspots(1));
+        assertEquals(List.of(first.id()), analysis.fanOutHotspots(1));
+        // every other step runs either before or after the first and last steps
+        assertEquals(List.of(first.id(), last.id()), analysis.serializingSteps());
+    }
+
+    @Test
+    public void testCriticalPath() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        final StepBuilder first = builder.addRawStep(context -> context.produce(new DummyItem()));
+        first.produces(DummyItem.class);
+        first.build();
+        final StepBuilder fast = builder.addRawStep(context -> context.produce(new DummyMultiItem()));
+        fast.consumes(DummyItem.class);
+        fast.produces(DummyMultiItem.class);
+        fast.build();
+        final StepBuilder slow = builder.addRawStep(context -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            context.produce(new DummyMultiItem());
+        });
+        slow.consumes(DummyItem.class);
+        slow.produces(DummyMultiItem.class);
+        slow.build();
+        final StepBuilder last = builder.addRawStep(context -> context.produce(new DummyItem2()));
+        last.consumes(DummyMultiItem.class);
+        last.produces(DummyItem2.class);
+        last.build();
+        builder.addFinal(DummyItem2.class);
+        final Result result = builder.build().createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertEquals(List.of(first.id(), slow.id(), last.id()), result.criticalPath());
+        // the fast step could have taken about as long as the slow one
+        assertTrue(result.slack(fast.id()).toMillis() >= 40);
+        assertTrue(result.slack(slow.id()).compareTo(result.slack(fast.id())) < 0);
+    }
+
+    @Test
+    public void testSubchain() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        final AtomicBoolean ran = new AtomicBoolean();
+        final StepBuilder first = builder.addRawStep(context -> context.produce(new DummyItem()));
+        first.produces(DummyItem.class);
+        first.build();
+        final StepBuilder second = builder.addRawStep(context -> {
+            assertNotNull(context.consume(DummyItem.class));
+            context.produce(new DummyItem2());
+        });
+        second.consumes(DummyItem.class);
+        second.produces(DummyItem2.class);
+        second.build();
+        final StepBuilder third = builder.addRawStep(context -> {
+            ran.set(true);
+            context.produce(new CloseableItem());
+        });
+        third.produces(CloseableItem.class);
+        third.build();
+        builder.addFinal(DummyItem2.class);
+        builder.addFinal(CloseableItem.class);
+        final Chain chain = builder.build();
+        final Chain subchain = chain.subchain(Set.of(ItemId.of(DummyItem2.class)));
+        assertSame(subchain, chain.subchain(Set.of(ItemId.of(DummyItem2.class))));
+        assertNull(subchain.stepInfo(third.id()));
+        final Result result = subchain.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem2.class));
+        assertFalse(ran.get());
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> subchain.subchain(Set.of(ItemId.of(CloseableItem.class))));
+    }
+
+    @Test
+    public void testChainCache() throws ChainBuildException {
+        final ChainCache cache = new ChainCache(1);
+        Result result = cache.build(snapshotBuilder(new AtomicBoolean())).createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertEquals(1, cache.size());
+        // the cached wiring is used with the steps of the new builder
+        final AtomicBoolean ran = new AtomicBoolean();
+        result = cache.build(snapshotBuilder(ran)).createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertTrue(ran.get());
+        assertEquals(1, cache.size());
+        // a different builder evicts it
+        final ChainBuilder builder = snapshotBuilder(ran);
+        builder.addFinal(DummyItem.class);
+        result = cache.build(builder).createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem.class));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testIncrementalRebuild() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.setIncremental(true);
+        final StepBuilder first = builder.addRawStep(context -> context.produce(new DummyItem()));
+        first.produces(DummyItem.class);
+        first.build();
+        final StepBuilder second = builder.addRawStep(context -> {
+            assertNotNull(context.consume(DummyItem.class));
+            context.produce(new DummyItem2());
+        });
+        second.consumes(DummyItem.class);
+        second.produces(DummyItem2.class);
+        second.build();
+        builder.addFinal(DummyItem2.class);
+        final Chain chain = builder.build();
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> Chain.builder().build().toBuilder());
+        // replace the first step
+        final AtomicBoolean ran = new AtomicBoolean();
+        ChainBuilder derived = chain.toBuilder();
+        derived.removeSteps(first.id()::equals);
+        StepBuilder replacement = derived.addRawStep(context -> {
+            ran.set(true);
+            context.produce(new DummyItem());
+        });
+        replacement.produces(DummyItem.class);
+        replacement.build();
+        final Chain rebuilt = derived.build();
+        assertNull(rebuilt.stepInfo(first.id()));
+        final Result result = rebuilt.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertTrue(ran.get());
+        // the rebuilt chain can be derived again, and new cycles are detected
+        derived = rebuilt.toBuilder();
+        derived.removeSteps(second.id()::equals);
+        replacement = derived.addRawStep(context -> {
+        });
+        replacement.consumes(DummyItem.class);
+        replacement.consumes(CloseableItem.class);
+        replacement.produces(DummyItem2.class);
+        replacement.build();
+        replacement = derived.addRawStep(context -> {
+        });
+        replacement.consumes(DummyItem2.class);
+        replacement.produces(CloseableItem.class);
+        replacement.build();
+        assertThatExceptionOfType(ChainBuildException.class).isThrownBy(derived::build)
+                .withMessageStartingWith("Cycle detected");
+        // cycles among steps which were left out of the chain are detected once they are included
+        final ChainBuilder unchecked = Chain.builder();
+        unchecked.setIncremental(true);
+        final StepBuilder a = unchecked.addRawStep(context -> {
+        });
+        a.consumes(DummyItem.class);
+        a.produces(DummyItem2.class);
+        a.build();
+        final StepBuilder b = unchecked.addRawStep(context -> {
+        });
+        b.consumes(DummyItem2.class);
+        b.produces(DummyItem.class);
+        b.build();
+        final StepBuilder c = unchecked.addRawStep(context -> context.produce(new DummyMultiItem()));
+        c.produces(DummyMultiItem.class);
+        c.build();
+        unchecked.addFinal(DummyMultiItem.class);
+        derived = unchecked.build().toBuilder();
+        derived.addFinal(DummyItem2.class);
+        assertThatExceptionOfType(ChainBuildException.class).isThrownBy(derived::build)
+                .withMessageStartingWith("Cycle detected");
+    }
+
+    @Test
+    public void testMerge() throws ChainBuildException {
+        final ChainBuilder producers = Chain.builder();
+        StepBuilder stepBuilder = producers.addRawStep(context -> context.produce(new DummyItem()));
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        final ChainBuilder consumers = Chain.builder();
+        stepBuilder = consumers.addRawStep(context -> {
+            assertNotNull(context.consume(DummyItem.class));
+            context.produce(new DummyItem2());
+        });
+        stepBuilder.consumes(DummyItem.class);
+        stepBuilder.produces(DummyItem2.class);
+        stepBuilder.build();
+        consumers.addFinal(DummyItem2.class);
+        final ChainBuilder conflicting = Chain.builder();
+        stepBuilder = conflicting.addRawStep(context -> context.produce(new DummyItem()));
+        stepBuilder.produces(DummyItem.class);
+        stepBuilder.build();
+        final ChainBuilder builder = Chain.builder();
+        assertThatExceptionOfType(ChainBuildException.class)
+                .isThrownBy(() -> builder.merge(List.of(producers, consumers, conflicting)));
+        // nothing was merged, so the conflicting producer can be merged on its own
+        assertThatCode(() -> builder.merge(conflicting)).doesNotThrowAnyException();
+        final ChainBuilder merged = Chain.builder().merge(List.of(producers, consumers));
+        final Result result = merged.build().createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem2.class));
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        IntStream.range(0, 1000).parallel().forEach(i -> {
+            final StepBuilder stepBuilder = builder.addRawStep(context -> context.produce(new DummyMultiItem()));
+            stepBuilder.produces(DummyMultiItem.class);
+            stepBuilder.build();
+            builder.addFinal(DummyMultiItem.class);
+        });
+        assertEquals(1000, builder.steps.size());
+        final Result result = builder.build().createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertEquals(1000, result.asSuccess().consumeMulti(DummyMultiItem.class).size());
+    }
+}
@@ -0,0 +1,533 @@
+package io.quarkus.qlue;
+
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.lang.invoke.MethodHandles.publicLookup;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.invoke.MethodHandles.Lookup;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.qlue.annotation.ForClass;
+import io.quarkus.qlue.annotation.Lazy;
+import io.quarkus.qlue.annotation.Step;
+import io.quarkus.qlue.item.InstanceItem;
+import io.quarkus.qlue.item.KeyedItem;
+import io.quarkus.qlue.item.MultiItem;
+import io.quarkus.qlue.item.SimpleItem;
+
+/**
+ *
+ */
+public class ReflectTests {
+    public static final class RanItem extends SimpleItem {
+        final AtomicBoolean ran = new AtomicBoolean();
+    }
+
+    public static final class DummyItem extends SimpleItem {
+    }
+
+    public static final class DummyItem2 extends SimpleItem {
+    }
+
+    public static final class NumberItem extends MultiItem {
+        final int number;
+
+        public NumberItem(final int number) {
+            this.number = number;
+        }
+    }
+
+    public static final class PathItem extends MultiItem implements KeyedItem<String> {
+        final String path;
+
+        public PathItem(final String path) {
+            this.path = path;
+        }
+
+        public String key() {
+            return path.substring(path.lastIndexOf('.') + 1);
+        }
+    }
+
+    public static final class SumItem extends SimpleItem {
+        final int sum;
+
+        public SumItem(final int sum) {
+            this.sum = sum;
+        }
+    }
+
+    public static final class StepClass {
+
+        @Step
+        public DummyItem2 doSomething(DummyItem input1, RanItem input2) {
+            input2.ran.set(true);
+            return new DummyItem2();
+        }
+    }
+
+    @Test
+    public void testInject() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addStepClass(StepClass.class);
+        builder.addInitial(RanItem.class);
+        builder.addInitial(DummyItem.class);
+        builder.addFinal(DummyItem2.class);
+        builder.addFinal(RanItem.class);
+        Chain chain = builder.build();
+        ExecutionBuilder executionBuilder = chain.createExecutionBuilder();
+        executionBuilder.produce(new RanItem());
+        executionBuilder.produce(new DummyItem());
+        final Result result = executionBuilder.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        Success success = result.asSuccess();
+        assertTrue(success.consume(RanItem.class).ran.get());
+        assertNotNull(success.consume(DummyItem2.class));
+    }
+
+    static final class PackagePrivateStepClass {
+        PackagePrivateStepClass() {
+        }
+
+        @Step
+        DummyItem2 doSomething(DummyItem input) {
+            return new DummyItem2();
+        }
+    }
+
+    @Test
+    public void testSharedStepClassModel() throws ChainBuildException {
+        // the same step class is added to separate builders with lookups of different access
+        for (Lookup lookup : List.of(lookup(), publicLookup(), lookup())) {
+            final ChainBuilder builder = Chain.builder();
+            builder.addStepClass(StepClass.class, lookup);
+            builder.addInitial(RanItem.class);
+            builder.addInitial(DummyItem.class);
+            builder.addFinal(DummyItem2.class);
+            builder.addFinal(RanItem.class);
+            final ExecutionBuilder executionBuilder = builder.build().createExecutionBuilder();
+            executionBuilder.produce(new RanItem());
+            executionBuilder.produce(new DummyItem());
+            final Result result = executionBuilder.execute(Runnable::run);
+            assertTrue(result.isSuccess());
+            assertTrue(result.asSuccess().consume(RanItem.class).ran.get());
+        }
+        // a handle cached for one lookup is not given to a lookup without access
+        ChainBuilder builder = Chain.builder();
+        builder.addStepClass(PackagePrivateStepClass.class, lookup());
+        builder.addInitial(DummyItem.class);
+        builder.addFinal(DummyItem2.class);
+        ExecutionBuilder executionBuilder = builder.build().createExecutionBuilder();
+        executionBuilder.produce(new DummyItem());
+        assertTrue(executionBuilder.execute(Runnable::run).isSuccess());
+        assertThrows(IllegalArgumentException.class,
+                () -> Chain.builder().addStepClass(PackagePrivateStepClass.class, publicLookup()));
+    }
+
+    @Test
+    public void testAnonymous() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addStepObject(new Object() {
+            @Step
+            public DummyItem getTheItem() {
+                return new DummyItem();
+            }
+
+            @Step
+            public void getTheOtherItem(Consumer<DummyItem2> consumer) {
+                consumer.accept(new DummyItem2());
+            }
+        }, lookup());
+        builder.addFinal(DummyItem.class);
+        builder.addFinal(DummyItem2.class);
+        Chain chain = builder.build();
+        ExecutionBuilder executionBuilder = chain.createExecutionBuilder();
+        final Result result = executionBuilder.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        Success success = result.asSuccess();
+        assertNotNull(success.consume(DummyItem.class));
+        assertNotNull(success.consume(DummyItem2.class));
+    }
+
+    public static final class SupplierSteps {
+        @Step
+        public DummyItem2 doSomething(Supplier<DummyItem> input1, Supplier<Optional<RanItem>> input2) {
+            assertNotNull(input1.get());
+            input2.get().ifPresent(ran -> ran.ran.set(true));
+            return new DummyItem2();
+        }
+    }
+
+    @Test
+    public void testSupplier() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addStepClass(SupplierSteps.class);
+        builder.addInitial(RanItem.class);
+        builder.addInitial(DummyItem.class);
+        builder.addFinal(DummyItem2.class);
+        builder.addFinal(RanItem.class);
+        Chain chain = builder.build();
+        ExecutionBuilder executionBuilder = chain.createExecutionBuilder();
+        executionBuilder.produce(new RanItem());
+        executionBuilder.produce(new DummyItem());
+        final Result result = executionBuilder.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        Success success = result.asSuccess();
+        assertTrue(success.consume(RanItem.class).ran.get());
+        assertNotNull(success.consume(DummyItem2.class));
+    }
+
+    public static final class LazySteps {
+        @Step
+        @Lazy
+        public DummyItem produceLazily(RanItem ran) {
+            ran.ran.set(true);
+            return new DummyItem();
+        }
+    }
+
+    public static final class UnusedLazySteps {
+        @Step
+        public DummyItem2 ignore(Supplier<DummyItem> input) {
+            return new DummyItem2();
+        }
+    }
+
+    public static final class UsedLazySteps {
+        @Step
+        public DummyItem2 use(Supplier<DummyItem> input) {
+            assertNotNull(input.get());
+            return new DummyItem2();
+        }
+    }
+
+    @Test
+    public void testLazy() throws ChainBuildException {
+        assertFalse(runLazy(UnusedLazySteps.class));
+        assertTrue(runLazy(UsedLazySteps.class));
+    }
+
+    @Test
+    public void testLazyOrderedAgainst() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addStepClass(LazySteps.class);
+        // a step which is only ordered after the item never demands it, so the lazy step must run eagerly
+        builder.addRawStep(sc -> sc.produce(new DummyItem2()))
+                .afterProduce(DummyItem.class)
+                .produces(DummyItem2.class)
+                .build();
+        builder.addInitial(RanItem.class);
+        builder.addFinal(DummyItem2.class);
+        ExecutionBuilder executionBuilder = builder.build().createExecutionBuilder();
+        final RanItem ranItem = new RanItem();
+        executionBuilder.produce(ranItem);
+        final Result result = executionBuilder.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertTrue(ranItem.ran.get());
+    }
+
+    private static boolean runLazy(Class<?> consumerClass) throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addStepClass(LazySteps.class);
+        builder.addStepClass(consumerClass);
+        builder.addInitial(RanItem.class);
+        builder.addFinal(DummyItem2.class);
+        Chain chain = builder.build();
+        ExecutionBuilder executionBuilder = chain.createExecutionBuilder();
+        final RanItem ranItem = new RanItem();
+        executionBuilder.produce(ranItem);
+        final Result result = executionBuilder.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertNotNull(result.asSuccess().consume(DummyItem2.class));
+        return ranItem.ran.get();
+    }
+
+    public static final class IndexSteps {
+        @Step
+        public void producePaths(Consumer<PathItem> consumer) {
+            consumer.accept(new PathItem("a.txt"));
+            consumer.accept(new PathItem("b.txt"));
+            consumer.accept(new PathItem("c.java"));
+        }
+
+        @Step
+        public SumItem countText(MultiIndex<String, PathItem> index) {
+            assertEquals(3, index.size());
+            assertEquals(2, index.keySet().size());
+            assertTrue(index.get("xml").isEmpty());
+            return new SumItem(index.get("txt").size());
+        }
+    }
+
+    @Test
+    public void testIndex() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addStepClass(IndexSteps.class);
+        builder.addFinal(SumItem.class);
+        Chain chain = builder.build();
+        final Result result = chain.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.asSuccess().consume(SumItem.class).sum);
+    }
+
+    public static final class CountingCondition implements BooleanSupplier {
+        static final AtomicInteger instances = new AtomicInteger();
+
+        public CountingCondition() {
+            instances.incrementAndGet();
+        }
+
+        public boolean getAsBoolean() {
+            return true;
+        }
+    }
+
+    public static final class ConditionalSteps {
+        @Step(when = CountingCondition.class)
+        public DummyItem produceOne() {
+            return new DummyItem();
+        }
+
+        @Step(when = CountingCondition.class)
+        public DummyItem2 produceTwo(DummyItem input) {
+            return new DummyItem2();
+        }
+    }
+
+    @Test
+    public void testConditionCache() throws ChainBuildException {
+        CountingCondition.instances.set(0);
+        ChainBuilder builder = Chain.builder();
+        builder.addStepClass(ConditionalSteps.class);
+        builder.addFinal(DummyItem2.class);
+        assertTrue(builder.build().createExecutionBuilder().execute(Runnable::run).isSuccess());
+        assertEquals(1, CountingCondition.instances.get());
+        // a given result is used as-is
+        builder = Chain.builder();
+        builder.setConditionResult(CountingCondition.class, false);
+        builder.addStepClass(ConditionalSteps.class);
+        builder.addFinal(DummyItem2.class);
+        Result result = builder.build().createExecutionBuilder().execute(Runnable::run);
+        assertNull(result.asSuccess().consumeOptional(DummyItem2.class));
+        assertEquals(1, CountingCondition.instances.get());
+    }
+
+    public static final class InaccessibleSteps {
+        @Step
+        private DummyItem2 unused() {
+            return new DummyItem2();
+        }
+    }
+
+    @Test
+    public void testUnusedStepsNotMaterialized() throws ChainBuildException {
+        ChainBuilder builder = Chain.builder();
+        builder.addStepObject(new InaccessibleSteps());
+        builder.addStepClass(LazySteps.class);
+        builder.addInitial(RanItem.class);
+        builder.addFinal(DummyItem.class);
+        // the inaccessible step is never included, so it is never unreflected
+        ExecutionBuilder executionBuilder = builder.build().createExecutionBuilder();
+        executionBuilder.produce(new RanItem());
+        assertTrue(executionBuilder.execute(Runnable::run).isSuccess());
+        // but it fails once it is included
+        builder.addFinal(DummyItem2.class);
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+
+    @Test
+    public void testAddStepClasses() throws ChainBuildException {
+        final ChainBuilder builder = Chain.builder();
+        builder.addStepClasses(List.of(StepClass.class, IndexSteps.class, LazySteps.class));
+        builder.addInitial(RanItem.class);
+        builder.addFinal(DummyItem2.class);
+        builder.addFinal(SumItem.class);
+        ExecutionBuilder executionBuilder = builder.build().createExecutionBuilder();
+        final RanItem ranItem = new RanItem();
+        executionBuilder.produce(ranItem);
+        final Result result = executionBuilder.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertTrue(ranItem.ran.get());
+        assertEquals(2, result.asSuccess().consume(SumItem.class).sum);
+    }
+
+    public static final class StaticSteps {
+        private StaticSteps() {
+        }
+
+        @Step
+        public static DummyItem produce() {
+            return new DummyItem();
+        }
+    }
+
+    public static final class FusedSteps {
+        static final AtomicInteger instances = new AtomicInteger();
+
+        public FusedSteps() {
+            instances.incrementAndGet();
+        }
+
+        @Step
+        public DummyItem2 consume(DummyItem item) {
+            return new DummyItem2();
+        }
+
+        @Step
+        public SumItem sum(DummyItem2 item) {
+            return new SumItem(instances.get());
+        }
+    }
+
+    @Test
+    public void testStaticAndFusedSteps() throws ChainBuildException {
+        FusedSteps.instances.set(0);
+        ChainBuilder builder = Chain.builder().setFuseStepClassConstruction(true);
+        builder.addStepClass(StaticSteps.class);
+        builder.addStepClass(FusedSteps.class);
+        builder.addFinal(SumItem.class);
+        Result result = builder.build().createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertEquals(1, result.asSuccess().consume(SumItem.class).sum);
+        // only the three step methods ran
+        assertEquals(3, result.executedSteps().size());
+    }
+
+    public static final class FailingFusedSteps {
+        static final AtomicInteger attempts = new AtomicInteger();
+
+        public FailingFusedSteps() throws InterruptedException {
+            if (attempts.incrementAndGet() == 1) {
+                // give the other step method time to start and wait for the instance
+                Thread.sleep(200);
+            }
+            throw new IllegalStateException("Expected failure");
+        }
+
+        @Step
+        public DummyItem2 first() {
+            return new DummyItem2();
+        }
+
+        @Step
+        public NumberItem second() {
+            return new NumberItem(1);
+        }
+    }
+
+    @Test
+    public void testFailingFusedConstruction() throws ChainBuildException {
+        FailingFusedSteps.attempts.set(0);
+        ChainBuilder builder = Chain.builder().setFuseStepClassConstruction(true);
+        builder.addStepClass(FailingFusedSteps.class);
+        builder.addFinal(DummyItem2.class);
+        builder.addFinal(NumberItem.class);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Result result;
+        try {
+            result = builder.build().createExecutionBuilder().execute(executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(result.isFailure());
+        // the constructor is not retried by the second step method
+        assertEquals(1, FailingFusedSteps.attempts.get());
+        assertEquals(1, result.asFailure().getProblems().stream()
+                .filter(IllegalStateException.class::isInstance)
+                .filter(t -> "Expected failure".equals(t.getMessage()))
+                .count());
+    }
+
+    public static final class InjectSelf {
+        @Test
+        public void checkItOut(@ForClass(InjectSelf.class) InstanceItem item) {
+            assertSame(this, item.instance());
+        }
+    }
+
+    @Test
+    public void testInjectSelf() throws ChainBuildException {
+        ChainBuilder builder = Chain.builder();
+        builder.addStepClass(InjectSelf.class);
+        builder.addFinal(InstanceItem.class, InjectSelf.class);
+        Chain chain = builder.build();
+        ExecutionBuilder executionBuilder = chain.createExecutionBuilder();
+        final Result result = executionBuilder.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        Success success = result.asSuccess();
+        assertNotNull(success.consume(InstanceItem.class, InjectSelf.class));
+    }
+
+    public static final class StreamSteps {
+        @Step
+        public NumberItem produceOne() {
+            return new NumberItem(1);
+        }
+
+        @Step
+        public void produceMore(Consumer<NumberItem> consumer) {
+            consumer.accept(new NumberItem(2));
+            consumer.accept(new NumberItem(3));
+        }
+
+        @Step
+        public void sum(Flow.Publisher<NumberItem> numbers, Consumer<SumItem> result) {
+            numbers.subscribe(new Flow.Subscriber<>() {
+                int sum;
+
+                public void onSubscribe(final Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                public void onNext(final NumberItem item) {
+                    sum += item.number;
+                }
+
+                public void onError(final Throwable throwable) {
+                }
+
+                public void onComplete() {
+                    result.accept(new SumItem(sum));
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testStream() throws ChainBuildException, InterruptedException {
+        ChainBuilder builder = Chain.builder();
+        builder.addStepClass(StreamSteps.class);
+        builder.addFinal(SumItem.class);
+        Chain chain = builder.build();
+        Result result = chain.createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertEquals(6, result.asSuccess().consume(SumItem.class).sum);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            result = chain.createExecutionBuilder().execute(executor);
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        }
+        assertTrue(result.isSuccess());
+        assertEquals(6, result.asSuccess().consume(SumItem.class).sum);
+    }
+}
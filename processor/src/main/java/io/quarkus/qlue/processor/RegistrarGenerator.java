@@ -0,0 +1,662 @@
+package io.quarkus.qlue.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * The generator of the step registrar for a single step class.
+ */
+final class RegistrarGenerator {
+    private static final String ANNOTATION = "io.quarkus.qlue.annotation.";
+    private static final String ITEM = "io.quarkus.qlue.item.";
+
+    private final Types types;
+    private final Elements elements;
+    private final TypeElement clazz;
+    private final String className;
+    private final StringBuilder b = new StringBuilder();
+    private int indent;
+
+    RegistrarGenerator(final ProcessingEnvironment env, final TypeElement clazz) {
+        this.types = env.getTypeUtils();
+        this.elements = env.getElementUtils();
+        this.clazz = clazz;
+        this.className = erasure(clazz.asType());
+    }
+
+    /**
+     * Get the qualified name of the generated registrar class, which is a top-level class in the package of the step
+     * class whose name is derived from the names of the step class and its enclosing classes.
+     *
+     * @return the registrar class name
+     */
+    String getRegistrarName() {
+        final PackageElement pkg = elements.getPackageOf(clazz);
+        final String simpleName = getRegistrarSimpleName();
+        return pkg.isUnnamed() ? simpleName : pkg.getQualifiedName() + "." + simpleName;
+    }
+
+    private String getRegistrarSimpleName() {
+        StringBuilder name = new StringBuilder();
+        Element element = clazz;
+        while (element instanceof TypeElement) {
+            name.insert(0, '_').insert(0, element.getSimpleName());
+            element = element.getEnclosingElement();
+        }
+        return name.append("QlueSteps").toString();
+    }
+
+    /**
+     * Generate the registrar source.
+     *
+     * @return the registrar source
+     * @throws GenerationException if the step class cannot be registered without reflection
+     */
+    String generate() throws GenerationException {
+        checkAccessible(clazz);
+        List<ExecutableElement> staticMethods = new ArrayList<>();
+        List<ExecutableElement> instanceMethods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(clazz.getEnclosedElements())) {
+            if (annotation(method, ANNOTATION + "Step") == null) {
+                continue;
+            }
+            if (method.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new GenerationException("Step method must not be private", method);
+            }
+            if (method.getModifiers().contains(Modifier.STATIC)) {
+                staticMethods.add(method);
+            } else {
+                instanceMethods.add(method);
+            }
+        }
+        final PackageElement pkg = elements.getPackageOf(clazz);
+        if (!pkg.isUnnamed()) {
+            line("package " + pkg.getQualifiedName() + ";");
+            line("");
+        }
+        line("import java.lang.invoke.MethodType;");
+        line("");
+        line("import io.quarkus.qlue.ChainBuilder;");
+        line("import io.quarkus.qlue.ConsumeFlag;");
+        line("import io.quarkus.qlue.MethodStepId;");
+        line("import io.quarkus.qlue.ProduceFlag;");
+        line("import io.quarkus.qlue.StepBuilder;");
+        line("import io.quarkus.qlue.StepRegistrar;");
+        line("import io.quarkus.qlue.item.InstanceItem;");
+        line("");
+        line("/**");
+        line(" * The generated step registrar for {@link " + className + "}.");
+        line(" */");
+        line("@javax.annotation.processing.Generated(\"" + StepProcessor.class.getName() + "\")");
+        line("public final class " + getRegistrarSimpleName() + " implements StepRegistrar {");
+        indent++;
+        line("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+        line("public void registerSteps(final ChainBuilder chainBuilder) {");
+        indent++;
+        for (ExecutableElement method : staticMethods) {
+            generateMethodStep(method);
+        }
+        if (!instanceMethods.isEmpty()) {
+            generateClassStep();
+            for (ExecutableElement method : instanceMethods) {
+                generateMethodStep(method);
+            }
+        }
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+        return b.toString();
+    }
+
+    private void checkAccessible(final TypeElement type) throws GenerationException {
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            throw new GenerationException("Step class must not be private", type);
+        }
+        final Element enclosing = type.getEnclosingElement();
+        if (enclosing instanceof TypeElement) {
+            final boolean implicitlyStatic = enclosing.getKind().isInterface() || type.getKind() != ElementKind.CLASS;
+            if (!implicitlyStatic && !type.getModifiers().contains(Modifier.STATIC)) {
+                throw new GenerationException("Step class must not be an inner class", type);
+            }
+            checkAccessible((TypeElement) enclosing);
+        } else if (!(enclosing instanceof PackageElement)) {
+            throw new GenerationException("Step class must not be a local class", type);
+        }
+    }
+
+    private void generateClassStep() throws GenerationException {
+        if (clazz.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new GenerationException("Step class with instance step methods must not be abstract", clazz);
+        }
+        final ExecutableElement ctor = findConstructor();
+        final Step step = new Step();
+        step.declare("produces(InstanceItem.class, " + className + ".class)");
+        step.declare("id(new MethodStepId(" + className + ".class, \"<init>\", " + methodType("void", ctor) + "))");
+        List<String> args = new ArrayList<>();
+        for (VariableElement parameter : ctor.getParameters()) {
+            args.add(cast(parameter.asType(), nonConsumerInput(step, parameter.asType(), parameter)));
+        }
+        List<String> injections = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+            final Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                continue;
+            }
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                throw new GenerationException("Injected field must not be private", field);
+            }
+            injections.add("instance." + field.getSimpleName() + " = "
+                    + cast(field.asType(), nonConsumerInput(step, field.asType(), field)) + ";");
+        }
+        line("{");
+        indent++;
+        line("final StepBuilder stepBuilder = chainBuilder.addRawStep(stepContext -> {");
+        indent++;
+        line("final " + className + " instance;");
+        line("try {");
+        indent++;
+        line("instance = new " + className + "(" + String.join(", ", args) + ");");
+        for (String injection : injections) {
+            line(injection);
+        }
+        indent--;
+        tryEnd("constructor", ctor);
+        line("stepContext.produce(" + className + ".class, new InstanceItem(instance));");
+        indent--;
+        step.end();
+    }
+
+    private ExecutableElement findConstructor() throws GenerationException {
+        List<ExecutableElement> candidates = new ArrayList<>();
+        for (ExecutableElement ctor : ElementFilter.constructorsIn(clazz.getEnclosedElements())) {
+            if (!ctor.getModifiers().contains(Modifier.PRIVATE)) {
+                candidates.add(ctor);
+            }
+        }
+        if (candidates.size() > 1) {
+            candidates.removeIf(ctor -> !ctor.getModifiers().contains(Modifier.PUBLIC));
+        }
+        if (candidates.isEmpty()) {
+            throw new GenerationException("No accessible constructor found for step class", clazz);
+        } else if (candidates.size() > 1) {
+            throw new GenerationException("Step class must have exactly one accessible constructor", clazz);
+        }
+        return candidates.get(0);
+    }
+
+    private void generateMethodStep(final ExecutableElement method) throws GenerationException {
+        final boolean isStatic = method.getModifiers().contains(Modifier.STATIC);
+        final AnnotationMirror stepAnnotation = annotation(method, ANNOTATION + "Step");
+        List<String> conditions = new ArrayList<>();
+        for (AnnotationValue value : classes(stepAnnotation, "when")) {
+            conditions.add("chainBuilder.evaluateCondition(" + classLiteral(value) + ")");
+        }
+        for (AnnotationValue value : classes(stepAnnotation, "unless")) {
+            conditions.add("!chainBuilder.evaluateCondition(" + classLiteral(value) + ")");
+        }
+        line(conditions.isEmpty() ? "{" : "if (" + String.join(" && ", conditions) + ") {");
+        indent++;
+        final Step step = new Step();
+        final TypeMirror returnType = method.getReturnType();
+        step.declare("id(new MethodStepId(" + className + ".class, \"" + method.getSimpleName() + "\", "
+                + methodType(erasure(returnType), method) + "))");
+        if (!isStatic) {
+            step.declare("consumes(InstanceItem.class, " + className + ".class)");
+        }
+        // method-wide annotations
+        for (AnnotationMirror ann : repeatable(method, "BeforeConsume")) {
+            beforeConsume(step, ann, "");
+        }
+        for (AnnotationMirror ann : repeatable(method, "BeforeConsumeWeak")) {
+            beforeConsume(step, ann, ", ProduceFlag.WEAK");
+        }
+        for (AnnotationMirror ann : repeatable(method, "AfterProduce")) {
+            final TypeMirror itemType = (TypeMirror) value(ann, "value").getValue();
+            final TypeMirror classArg = (TypeMirror) value(ann, "forClass").getValue();
+            if (isA(itemType, ITEM + "ClassItem")) {
+                if (isNone(classArg)) {
+                    throw new GenerationException("Item " + itemType + " needs a class argument", method);
+                }
+                step.declare("afterProduce((Class) " + erasure(itemType) + ".class, (Class) " + erasure(classArg)
+                        + ".class)");
+            } else if (isA(itemType, ITEM + "EmptyItem")) {
+                if (!isNone(classArg)) {
+                    throw new GenerationException("Item " + itemType + " must not have a class argument", method);
+                }
+                step.declare("afterProduce(" + erasure(itemType) + ".class)");
+            } else {
+                throw new GenerationException("Cannot consume " + itemType, method);
+            }
+        }
+        if (annotation(method, ANNOTATION + "Lazy") != null) {
+            step.declare("lazy()");
+        }
+        List<String> args = new ArrayList<>();
+        for (VariableElement parameter : method.getParameters()) {
+            args.add(cast(parameter.asType(), input(step, parameter.asType(), parameter)));
+        }
+        // the return value
+        String produce = null;
+        if (returnType.getKind() == TypeKind.VOID) {
+            if (annotation(method, ANNOTATION + "AlwaysProduce") != null) {
+                throw new GenerationException("@AlwaysProduce may only be given on producers", method);
+            }
+        } else {
+            produce = produce(step, returnType, method, "result");
+            if (produce == null) {
+                throw new GenerationException("Cannot produce " + returnType, method);
+            }
+        }
+        line("final StepBuilder stepBuilder = chainBuilder.addRawStep(stepContext -> {");
+        indent++;
+        if (produce != null) {
+            line("final " + erasure(returnType) + " result;");
+        }
+        line("try {");
+        indent++;
+        final String receiver;
+        if (isStatic) {
+            receiver = className;
+        } else {
+            line("final " + className + " instance = (" + className + ") stepContext.consume(InstanceItem.class, "
+                    + className + ".class).instance();");
+            receiver = "instance";
+        }
+        final String call = receiver + "." + method.getSimpleName() + "(" + String.join(", ", args) + ");";
+        line(produce == null ? call : "result = " + call);
+        indent--;
+        tryEnd("method", method);
+        if (produce != null) {
+            line(produce + ";");
+        }
+        indent--;
+        step.end();
+    }
+
+    private void beforeConsume(final Step step, final AnnotationMirror ann, final String flags)
+            throws GenerationException {
+        final TypeMirror itemType = (TypeMirror) value(ann, "value").getValue();
+        final TypeMirror classArg = (TypeMirror) value(ann, "forClass").getValue();
+        if (isA(itemType, ITEM + "EmptyClassItem")) {
+            if (isNone(classArg)) {
+                throw new GenerationException("Item " + itemType + " needs a class argument", clazz);
+            }
+            step.declare("beforeConsume((Class) " + erasure(itemType) + ".class, (Class) " + erasure(classArg)
+                    + ".class" + flags + ")");
+        } else if (isA(itemType, ITEM + "EmptyItem")) {
+            if (!isNone(classArg)) {
+                throw new GenerationException("Item " + itemType + " must not have a class argument", clazz);
+            }
+            step.declare("beforeConsume(" + erasure(itemType) + ".class" + flags + ")");
+        } else {
+            throw new GenerationException("Cannot produce " + itemType, clazz);
+        }
+    }
+
+    /**
+     * Declare the production of a return value or a value accepted by an injected {@code Consumer}, returning the
+     * expression which produces the value.
+     *
+     * @return the production expression, or {@code null} if the type is not a producible item type
+     */
+    private String produce(final Step step, final TypeMirror type, final Element element, final String value)
+            throws GenerationException {
+        final TypeMirror classArg = forClass(element);
+        final List<String> flags = new ArrayList<>();
+        if (annotation(element, ANNOTATION + "Weak") != null) {
+            flags.add(", ProduceFlag.WEAK");
+        }
+        if (annotation(element, ANNOTATION + "Overridable") != null) {
+            flags.add(", ProduceFlag.OVERRIDABLE");
+        }
+        final boolean always = annotation(element, ANNOTATION + "AlwaysProduce") != null;
+        final String itemClass = erasure(type) + ".class";
+        if (isA(type, ITEM + "SimpleItem") || isA(type, ITEM + "MultiItem")) {
+            if (classArg != null) {
+                throw new GenerationException("Item " + type + " must not have a class argument", element);
+            }
+            step.declare("produces(" + itemClass + String.join("", flags) + ")");
+            if (always) {
+                step.statement("chainBuilder.addFinal(" + itemClass + ");");
+            }
+            return "stepContext.produce((Class) " + itemClass + ", " + value + ")";
+        } else if (isA(type, ITEM + "SimpleClassItem") || isA(type, ITEM + "MultiClassItem")) {
+            if (classArg == null) {
+                throw new GenerationException("Item " + type + " needs a class argument", element);
+            }
+            final String argClass = erasure(classArg) + ".class";
+            step.declare("produces((Class) " + itemClass + ", (Class) " + argClass + String.join("", flags) + ")");
+            if (always) {
+                step.statement("chainBuilder.addFinal((Class) " + itemClass + ", (Class) " + argClass + ");");
+            }
+            return "stepContext.produce((Class) " + itemClass + ", (Class) " + argClass + ", " + value + ")";
+        }
+        return null;
+    }
+
+    /**
+     * Declare a method parameter, returning the expression which yields its value.
+     */
+    private String input(final Step step, final TypeMirror type, final Element element) throws GenerationException {
+        final String raw = erasure(type);
+        if (raw.equals("io.quarkus.qlue.StepContext")) {
+            return "stepContext";
+        }
+        if (raw.equals("java.util.function.Consumer")) {
+            final TypeMirror argType = typeArgument(type, 0, element);
+            final String produce = produce(step, argType, element, "(" + erasure(argType) + ") o");
+            if (produce == null) {
+                throw new GenerationException("Cannot produce " + argType, element);
+            }
+            return "((java.util.function.Consumer<Object>) o -> " + produce + ")";
+        }
+        if (raw.equals("java.util.function.Supplier")) {
+            // defer the actual consumption until the supplier is called
+            final TypeMirror argType = typeArgument(type, 0, element);
+            return "((java.util.function.Supplier<Object>) () -> " + nonConsumerInput(step, argType, element) + ")";
+        }
+        if (raw.equals("java.util.concurrent.Flow.Publisher")) {
+            final TypeMirror classArg = forClass(element);
+            final TypeMirror argType = typeArgument(type, 0, element);
+            final String itemClass = erasure(argType) + ".class";
+            if (isA(argType, ITEM + "MultiItem")) {
+                if (classArg != null) {
+                    throw new GenerationException("Item " + argType + " must not have a class argument", element);
+                }
+                step.declare("consumes(" + itemClass + ", ConsumeFlag.STREAMED)");
+                return "stepContext.consumeStream((Class) " + itemClass + ")";
+            } else if (isA(argType, ITEM + "MultiClassItem")) {
+                if (classArg == null) {
+                    throw new GenerationException("Item " + argType + " needs a class argument", element);
+                }
+                final String argClass = erasure(classArg) + ".class";
+                step.declare("consumes((Class) " + itemClass + ", (Class) " + argClass + ", ConsumeFlag.STREAMED)");
+                return "stepContext.consumeStream((Class) " + itemClass + ", (Class) " + argClass + ")";
+            }
+            throw new GenerationException("Cannot stream " + argType, element);
+        }
+        return nonConsumerInput(step, type, element);
+    }
+
+    /**
+     * Declare a constructor parameter, field, or consumed method parameter, returning the expression which yields its
+     * value.
+     */
+    private String nonConsumerInput(final Step step, final TypeMirror type, final Element element)
+            throws GenerationException {
+        if (type.getKind().isPrimitive()) {
+            throw new GenerationException("Cannot inject a value of primitive type " + type, element);
+        }
+        if (annotation(element, ANNOTATION + "AlwaysProduce") != null) {
+            throw new GenerationException("@AlwaysProduce may only be given on producers", element);
+        }
+        final TypeMirror classArg = forClass(element);
+        final String raw = erasure(type);
+        final TypeMirror realType;
+        String flags = "";
+        if (raw.equals("java.util.Optional")) {
+            realType = typeArgument(type, 0, element);
+            flags = ", ConsumeFlag.OPTIONAL";
+        } else if (isA(type, ITEM + "SimpleItem") || isA(type, ITEM + "SimpleClassItem")) {
+            realType = type;
+        } else if (raw.equals("java.util.List")) {
+            realType = typeArgument(type, 0, element);
+        } else if (raw.equals("io.quarkus.qlue.MultiIndex")) {
+            realType = typeArgument(type, 1, element);
+            if (!isA(realType, ITEM + "KeyedItem")) {
+                throw new GenerationException("Item " + realType + " must be a keyed item to be indexed", element);
+            }
+        } else {
+            throw new GenerationException("Cannot consume " + type, element);
+        }
+        final String itemClass = "(Class) " + erasure(realType) + ".class";
+        final String args;
+        if (isA(realType, ITEM + "SimpleItem") || isA(realType, ITEM + "MultiItem")) {
+            if (classArg != null) {
+                throw new GenerationException("Item " + realType + " must not have a class argument", element);
+            }
+            step.declare("consumes(" + erasure(realType) + ".class" + flags + ")");
+            args = itemClass;
+        } else if (isA(realType, ITEM + "SimpleClassItem") || isA(realType, ITEM + "MultiClassItem")) {
+            if (classArg == null) {
+                throw new GenerationException("Item " + realType + " needs a class argument", element);
+            }
+            final String argClass = "(Class) " + erasure(classArg) + ".class";
+            step.declare("consumes(" + itemClass + ", " + argClass + flags + ")");
+            args = itemClass + ", " + argClass;
+        } else {
+            throw new GenerationException("Cannot consume " + realType, element);
+        }
+        final boolean simple = isA(realType, ITEM + "SimpleItem") || isA(realType, ITEM + "SimpleClassItem");
+        if (raw.equals("java.util.Optional")) {
+            if (!simple) {
+                throw new GenerationException("Cannot consume " + type, element);
+            }
+            return "java.util.Optional.ofNullable(stepContext.consume(" + args + "))";
+        } else if (raw.equals("java.util.List")) {
+            return simple ? "java.util.Collections.singletonList(stepContext.consume(" + args + "))"
+                    : "stepContext.consumeMulti(" + args + ")";
+        } else if (raw.equals("io.quarkus.qlue.MultiIndex")) {
+            if (simple) {
+                throw new GenerationException("Cannot consume " + type, element);
+            }
+            return "stepContext.consumeIndex(" + args + ")";
+        } else {
+            return "stepContext.consume(" + args + ")";
+        }
+    }
+
+    private TypeMirror typeArgument(final TypeMirror type, final int idx, final Element element)
+            throws GenerationException {
+        if (type instanceof DeclaredType) {
+            final List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+            if (idx < args.size()) {
+                TypeMirror arg = args.get(idx);
+                if (arg instanceof WildcardType) {
+                    arg = ((WildcardType) arg).getExtendsBound();
+                }
+                if (arg != null && arg.getKind() == TypeKind.DECLARED) {
+                    return arg;
+                }
+            }
+        }
+        throw new GenerationException("Cannot determine the item type of " + type, element);
+    }
+
+    private String methodType(final String returnType, final ExecutableElement executable) {
+        StringBuilder type = new StringBuilder("MethodType.methodType(").append(returnType).append(".class");
+        for (VariableElement parameter : executable.getParameters()) {
+            type.append(", ").append(erasure(parameter.asType())).append(".class");
+        }
+        return type.append(')').toString();
+    }
+
+    /**
+     * Describe a method or constructor in the same way as its reflective counterpart's {@code toString}.
+     */
+    private String describe(final ExecutableElement executable) {
+        StringBuilder description = new StringBuilder();
+        for (Modifier modifier : executable.getModifiers()) {
+            description.append(modifier).append(' ');
+        }
+        final boolean method = executable.getKind() == ElementKind.METHOD;
+        if (method) {
+            description.append(binaryName(executable.getReturnType())).append(' ');
+        }
+        description.append(elements.getBinaryName(clazz));
+        if (method) {
+            description.append('.').append(executable.getSimpleName());
+        }
+        description.append('(');
+        final List<? extends VariableElement> parameters = executable.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                description.append(',');
+            }
+            description.append(binaryName(parameters.get(i).asType()));
+        }
+        return description.append(')').toString();
+    }
+
+    private String binaryName(final TypeMirror type) {
+        final TypeMirror erased = types.erasure(type);
+        return erased.getKind() == TypeKind.DECLARED
+                ? elements.getBinaryName((TypeElement) types.asElement(erased)).toString()
+                : erased.toString();
+    }
+
+    private String cast(final TypeMirror type, final String expression) {
+        return "(" + erasure(type) + ") " + expression;
+    }
+
+    private String erasure(final TypeMirror type) {
+        return types.erasure(type).toString();
+    }
+
+    private String classLiteral(final AnnotationValue value) {
+        return erasure((TypeMirror) value.getValue()) + ".class";
+    }
+
+    private boolean isA(final TypeMirror type, final String name) {
+        final TypeElement element = elements.getTypeElement(name);
+        return element != null && types.isSubtype(types.erasure(type), types.erasure(element.asType()));
+    }
+
+    private boolean isNone(final TypeMirror type) {
+        return erasure(type).equals(ANNOTATION + "None");
+    }
+
+    private TypeMirror forClass(final Element element) {
+        final AnnotationMirror ann = annotation(element, ANNOTATION + "ForClass");
+        return ann == null ? null : (TypeMirror) value(ann, "value").getValue();
+    }
+
+    private AnnotationMirror annotation(final Element element, final String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<AnnotationMirror> repeatable(final Element element, final String simpleName) {
+        final AnnotationMirror single = annotation(element, ANNOTATION + simpleName);
+        if (single != null) {
+            return List.of(single);
+        }
+        final AnnotationMirror container = annotation(element, ANNOTATION + simpleName + ".List");
+        if (container == null) {
+            return List.of();
+        }
+        List<AnnotationMirror> list = new ArrayList<>();
+        for (AnnotationValue value : (List<? extends AnnotationValue>) value(container, "value").getValue()) {
+            list.add((AnnotationMirror) value.getValue());
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<? extends AnnotationValue> classes(final AnnotationMirror ann, final String name) {
+        final AnnotationValue value = value(ann, name);
+        return value == null ? Collections.emptyList() : (List<? extends AnnotationValue>) value.getValue();
+    }
+
+    private AnnotationValue value(final AnnotationMirror ann, final String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements
+                .getElementValuesWithDefaults(ann).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void tryEnd(final String kind, final ExecutableElement executable) {
+        line("} catch (Throwable t) {");
+        indent++;
+        // describe the failure like the reflective step would
+        line("stepContext.addInvocationProblem(\"" + kind + " " + describe(executable) + "\", t);");
+        line("return;");
+        indent--;
+        line("}");
+    }
+
+    private void line(final String line) {
+        if (!line.isEmpty()) {
+            b.append("    ".repeat(indent)).append(line);
+        }
+        b.append('\n');
+    }
+
+    /**
+     * The declarations of a single step, which are emitted once the step body is complete, closing the block of the
+     * step.
+     */
+    final class Step {
+        private final List<String> declarations = new ArrayList<>();
+        private final List<String> statements = new ArrayList<>();
+
+        void declare(String declaration) {
+            declarations.add(declaration);
+        }
+
+        void statement(String statement) {
+            statements.add(statement);
+        }
+
+        void end() {
+            line("});");
+            for (String declaration : declarations) {
+                line("stepBuilder." + declaration + ";");
+            }
+            line("stepBuilder.build();");
+            for (String statement : statements) {
+                line(statement);
+            }
+            indent--;
+            line("}");
+        }
+    }
+
+    /**
+     * An exception indicating that a step class cannot be registered without reflection.
+     */
+    static final class GenerationException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        GenerationException(final String message, final Element element) {
+            super(message);
+            this.element = element;
+        }
+
+        Element getElement() {
+            return element;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.quarkus.qlue.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * An annotation processor which generates a {@code StepRegistrar} for each class which declares
+ * {@code @Step} methods. The generated registrar declares the same consumes and produces as the reflective
+ * {@code ChainBuilder.addStepClass} would using the basic injection mapper, and invokes the step methods directly.
+ * Each generated registrar is also listed in {@code META-INF/services/io.quarkus.qlue.StepRegistrar}.
+ */
+@SupportedAnnotationTypes(StepProcessor.STEP)
+public final class StepProcessor extends AbstractProcessor {
+    static final String STEP = "io.quarkus.qlue.annotation.Step";
+    static final String STEP_REGISTRAR = "io.quarkus.qlue.StepRegistrar";
+
+    private final Set<String> registrars = new LinkedHashSet<>();
+
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServices();
+            return false;
+        }
+        final TypeElement step = processingEnv.getElementUtils().getTypeElement(STEP);
+        if (step == null) {
+            // Qlue is not on the class path
+            return false;
+        }
+        Set<TypeElement> classes = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(step)) {
+            if (element.getKind() == ElementKind.METHOD) {
+                classes.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        for (TypeElement clazz : classes) {
+            final String source;
+            final RegistrarGenerator generator = new RegistrarGenerator(processingEnv, clazz);
+            try {
+                source = generator.generate();
+            } catch (RegistrarGenerator.GenerationException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.getElement());
+                continue;
+            }
+            final String name = generator.getRegistrarName();
+            try {
+                JavaFileObject file = processingEnv.getFiler().createSourceFile(name, clazz);
+                try (Writer writer = file.openWriter()) {
+                    writer.write(source);
+                }
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Failed to write step registrar " + name + ": " + e, clazz);
+                continue;
+            }
+            registrars.add(name);
+        }
+        return false;
+    }
+
+    private void writeServices() {
+        if (registrars.isEmpty()) {
+            return;
+        }
+        final String path = "META-INF/services/" + STEP_REGISTRAR;
+        // an incremental compilation only processes some classes, so keep the registrars of the others
+        final Set<String> allRegistrars = new LinkedHashSet<>();
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", path);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int comment = line.indexOf('#');
+                    line = (comment == -1 ? line : line.substring(0, comment)).trim();
+                    if (!line.isEmpty()) {
+                        allRegistrars.add(line);
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            // there is no existing service file
+        }
+        allRegistrars.addAll(registrars);
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", path);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String registrar : allRegistrars) {
+                    writer.write(registrar);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write step registrar service file: " + e);
+        }
+    }
+}
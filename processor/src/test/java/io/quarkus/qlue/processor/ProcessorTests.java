@@ -0,0 +1,176 @@
+package io.quarkus.qlue.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.quarkus.qlue.Chain;
+import io.quarkus.qlue.ChainBuildException;
+import io.quarkus.qlue.ChainBuilder;
+import io.quarkus.qlue.ExecutionBuilder;
+import io.quarkus.qlue.Result;
+import io.quarkus.qlue.StepRegistrar;
+import io.quarkus.qlue.annotation.Step;
+import io.quarkus.qlue.item.MultiItem;
+import io.quarkus.qlue.item.SimpleItem;
+
+/**
+ *
+ */
+public class ProcessorTests {
+    public static final class NameItem extends SimpleItem {
+        final String name;
+
+        public NameItem(final String name) {
+            this.name = name;
+        }
+    }
+
+    public static final class PrefixItem extends SimpleItem {
+        final String prefix;
+
+        public PrefixItem(final String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    public static final class PartItem extends MultiItem {
+        final String part;
+
+        public PartItem(final String part) {
+            this.part = part;
+        }
+    }
+
+    public static final class GreetingItem extends SimpleItem {
+        final String greeting;
+
+        public GreetingItem(final String greeting) {
+            this.greeting = greeting;
+        }
+    }
+
+    public static final class UnusedItem extends SimpleItem {
+    }
+
+    public static final class Never implements BooleanSupplier {
+        public boolean getAsBoolean() {
+            return false;
+        }
+    }
+
+    public static final class GreetingSteps {
+        private final NameItem name;
+        Optional<UnusedItem> unused;
+
+        public GreetingSteps(final NameItem name) {
+            this.name = name;
+        }
+
+        @Step
+        public static PrefixItem prefix() {
+            return new PrefixItem("Hello");
+        }
+
+        @Step
+        void parts(Consumer<PartItem> consumer) {
+            consumer.accept(new PartItem(name.name));
+            consumer.accept(new PartItem("!"));
+        }
+
+        @Step
+        public GreetingItem greet(PrefixItem prefix, List<PartItem> parts) {
+            assertFalse(unused.isPresent());
+            StringBuilder b = new StringBuilder(prefix.prefix).append(", ");
+            parts.forEach(part -> b.append(part.part));
+            return new GreetingItem(b.toString());
+        }
+
+        @Step(when = Never.class)
+        public UnusedItem never() {
+            throw new IllegalStateException("Excluded step was run");
+        }
+    }
+
+    @Test
+    public void testGeneratedRegistrar() throws ChainBuildException {
+        ChainBuilder builder = Chain.builder();
+        builder.addSteps(new ProcessorTests_GreetingSteps_QlueSteps());
+        builder.addInitial(NameItem.class);
+        builder.addFinal(GreetingItem.class);
+        builder.addFinal(UnusedItem.class);
+        ExecutionBuilder executionBuilder = builder.build().createExecutionBuilder();
+        executionBuilder.produce(new NameItem("world"));
+        Result result = executionBuilder.execute(Runnable::run);
+        assertTrue(result.isSuccess());
+        assertEquals("Hello, world!", result.asSuccess().consume(GreetingItem.class).greeting);
+        assertNull(result.asSuccess().consumeOptional(UnusedItem.class));
+    }
+
+    public static final class FailingSteps {
+        @Step
+        public static GreetingItem fail() {
+            throw new IllegalStateException("Expected failure");
+        }
+    }
+
+    @Test
+    public void testGeneratedFailure() throws ChainBuildException {
+        ChainBuilder builder = Chain.builder();
+        builder.addSteps(new ProcessorTests_FailingSteps_QlueSteps());
+        builder.addFinal(GreetingItem.class);
+        Result result = builder.build().createExecutionBuilder().execute(Runnable::run);
+        assertTrue(result.isFailure());
+        assertEquals(1, result.asFailure().getProblems().size());
+    }
+
+    @Test
+    public void testIncrementalServices(@TempDir Path dir) throws IOException {
+        final Path services = dir.resolve("classes/META-INF/services/io.quarkus.qlue.StepRegistrar");
+        Files.createDirectories(services.getParent());
+        // the registrar of a class which is not recompiled
+        Files.writeString(services, "com.example.Other_QlueSteps\n");
+        final Path source = dir.resolve("src/com/example/Changed.java");
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, """
+                package com.example;
+
+                public class Changed {
+                    @io.quarkus.qlue.annotation.Step
+                    public static void step() {
+                    }
+                }
+                """);
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-classpath", System.getProperty("java.class.path"),
+                "-processor", StepProcessor.class.getName(), "-d", dir.resolve("classes").toString(),
+                source.toString()));
+        assertEquals(List.of("com.example.Other_QlueSteps", "com.example.Changed_QlueSteps"),
+                Files.readAllLines(services));
+    }
+
+    @Test
+    public void testServiceLoader() {
+        boolean found = false;
+        for (StepRegistrar registrar : ServiceLoader.load(StepRegistrar.class, ProcessorTests.class.getClassLoader())) {
+            found |= registrar instanceof ProcessorTests_GreetingSteps_QlueSteps;
+        }
+        assertTrue(found);
+    }
+}
@@ -1,11 +0,0 @@
-package io.quarkus.qlue;
-
-/**
- */
-public enum ConsumeFlag {
-    /**
-     * Do not exclude the step even if the given resource is not produced by any other step.
-     */
-    OPTIONAL,
-    ;
-}